@@ -0,0 +1,75 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 基准测试使用的Redis连接，不启动Spring容器。
+ * 通过 -Dredis.host、-Dredis.port、-Dredis.password、-Dredis.database 指定，
+ * 默认使用本地Redis的15号库，避免和业务数据（如stream.orders）混在一起
+ */
+public class BenchmarkRedis {
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    public BenchmarkRedis() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        configuration.setDatabase(Integer.getInteger("redis.database", 15));
+        String password = System.getProperty("redis.password");
+        if (password != null) {
+            configuration.setPassword(password);
+        }
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        cacheRedisTemplate = new RedisTemplate<>();
+        cacheRedisTemplate.setConnectionFactory(connectionFactory);
+        cacheRedisTemplate.setKeySerializer(RedisSerializer.string());
+        cacheRedisTemplate.setValueSerializer(RedisSerializer.byteArray());
+        cacheRedisTemplate.afterPropertiesSet();
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    public StringRedisTemplate stringRedisTemplate() {
+        return stringRedisTemplate;
+    }
+
+    public CacheClient cacheClient(CacheCodec cacheCodec) {
+        return new CacheClient(stringRedisTemplate, cacheRedisTemplate, cacheCodec, listenerContainer);
+    }
+
+    public void flush() {
+        stringRedisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+    }
+
+    public void close() {
+        try {
+            listenerContainer.destroy();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        connectionFactory.destroy();
+    }
+}
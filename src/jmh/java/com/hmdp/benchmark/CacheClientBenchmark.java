@@ -0,0 +1,71 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SmileCacheCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * CacheClient三种查询策略的读路径。
+ * keySpace=1 时请求全部命中本地缓存；keySpace远大于本地缓存容量时，大部分请求落到Redis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class CacheClientBenchmark {
+
+    @Param({"1", "100000"})
+    private int keySpace;
+
+    private BenchmarkRedis redis;
+
+    private CacheClient cacheClient;
+
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        redis.flush();
+        cacheClient = redis.cacheClient(new SmileCacheCodec());
+        // 逻辑过期需要提前预热
+        for (long id = 0; id < keySpace; id++) {
+            cacheClient.setWithLogicalExpire("bench:logical:" + id, BenchmarkData.shop(id), 1L, TimeUnit.DAYS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        redis.flush();
+        redis.close();
+    }
+
+    private long nextId() {
+        return ThreadLocalRandom.current().nextInt(keySpace);
+    }
+
+    @Benchmark
+    public Shop passThrough() {
+        return cacheClient.queryWithPassThrough(
+                CACHE_SHOP_KEY, nextId(), Shop.class, BenchmarkData::shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop mutex() {
+        return cacheClient.queryWithMutex(
+                "bench:mutex:", nextId(), Shop.class, BenchmarkData::shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop logicalExpire() {
+        return cacheClient.queryWithLogicalExpire(
+                "bench:logical:", nextId(), Shop.class, BenchmarkData::shop, 1L, TimeUnit.DAYS);
+    }
+}
@@ -0,0 +1,83 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import com.hmdp.utils.SmileCacheCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存序列化：Hutool JSON 与 Smile 二进制的编解码开销对比，不依赖Redis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "smile"})
+    private String codecName;
+
+    private CacheCodec codec;
+
+    private Shop shop;
+
+    private Blog blog;
+
+    private RedisData redisData;
+
+    private byte[] shopBytes;
+
+    private byte[] blogBytes;
+
+    private byte[] redisDataBytes;
+
+    @Setup
+    public void setup() {
+        codec = "json".equals(codecName) ? new JsonCacheCodec() : new SmileCacheCodec();
+        shop = BenchmarkData.shop(1L);
+        blog = BenchmarkData.blog(1L);
+        redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusDays(1));
+        shopBytes = codec.encode(shop);
+        blogBytes = codec.encode(blog);
+        redisDataBytes = codec.encode(redisData);
+    }
+
+    @Benchmark
+    public byte[] encodeShop() {
+        return codec.encode(shop);
+    }
+
+    @Benchmark
+    public Shop decodeShop() {
+        return codec.decode(shopBytes, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] encodeBlog() {
+        return codec.encode(blog);
+    }
+
+    @Benchmark
+    public Blog decodeBlog() {
+        return codec.decode(blogBytes, Blog.class);
+    }
+
+    @Benchmark
+    public byte[] encodeLogical() {
+        return codec.encode(redisData);
+    }
+
+    @Benchmark
+    public RedisData decodeLogical() {
+        return codec.decodeLogical(redisDataBytes, Shop.class);
+    }
+}
@@ -0,0 +1,43 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIdWorker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局唯一ID生成：segmentSize=1 时每个ID一次INCR，否则按号段在本地发放
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class RedisIdWorkerBenchmark {
+
+    @Param({"1", "1000"})
+    private int segmentSize;
+
+    private BenchmarkRedis redis;
+
+    private RedisIdWorker redisIdWorker;
+
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        redis.flush();
+        redisIdWorker = new RedisIdWorker(redis.stringRedisTemplate(), segmentSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redis.flush();
+        redis.close();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return redisIdWorker.nextId("order");
+    }
+}
@@ -0,0 +1,58 @@
+package com.hmdp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀资格判断脚本seckill.lua：每次调用使用新的用户id，衡量扣库存 + 一人一单 + XADD的完整路径
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class SeckillScriptBenchmark {
+
+    private static final String VOUCHER_ID = "999999";
+
+    private final AtomicLong userId = new AtomicLong();
+
+    private BenchmarkRedis redis;
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private DefaultRedisScript<Long> script;
+
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        redis.flush();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + VOUCHER_ID, String.valueOf(Integer.MAX_VALUE));
+        script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("seckill.lua"));
+        script.setResultType(Long.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redis.flush();
+        redis.close();
+    }
+
+    @Benchmark
+    public Long seckill() {
+        long id = userId.incrementAndGet();
+        return stringRedisTemplate.execute(
+                script, Collections.emptyList(), VOUCHER_ID, String.valueOf(id), String.valueOf(id));
+    }
+}
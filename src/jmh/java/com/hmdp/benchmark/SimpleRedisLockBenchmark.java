@@ -0,0 +1,58 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.SimpleRedisLock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分布式锁的一次获取 + 释放（SETNX + unlock.lua），每个线程使用不同的锁，只衡量Redis往返开销
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class SimpleRedisLockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Redis {
+
+        private BenchmarkRedis redis;
+
+        @Setup
+        public void setup() {
+            redis = new BenchmarkRedis();
+            redis.flush();
+        }
+
+        @TearDown
+        public void tearDown() {
+            redis.flush();
+            redis.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lock {
+
+        private static final AtomicInteger SEQ = new AtomicInteger();
+
+        private SimpleRedisLock lock;
+
+        @Setup
+        public void setup(Redis redis) {
+            lock = new SimpleRedisLock("bench:" + SEQ.incrementAndGet(), redis.redis.stringRedisTemplate());
+        }
+    }
+
+    @Benchmark
+    public boolean lockAndUnlock(Lock lock) {
+        boolean success = lock.lock.tryLock(10);
+        if (success) {
+            lock.lock.unlock();
+        }
+        return success;
+    }
+}
@@ -1,9 +1,13 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
+import com.hmdp.utils.RateLimiter;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SessionStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -19,7 +23,16 @@ import javax.annotation.Resource;
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SessionStore sessionStore;
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    @Value("${hmdp.admin.user-ids:}")
+    private String adminUserIds;
+
+    @Value("${hmdp.rate-limit.trusted-proxies:}")
+    private String trustedProxies;
 
 
     @Override
@@ -29,6 +42,7 @@ public class MvcConfig implements WebMvcConfigurer {
                 .excludePathPatterns(
                         "/user/code", //发送验证码请求
                         "/user/login", //登陆
+                        "/user/refresh", //刷新token，此时token可能已过期
                         "/blog/hot",
                         "/shop/**",
                         "/shop-type/**",
@@ -36,6 +50,10 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/voucher/**"
                 ).order(1);
         //用于刷新token有效期
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(sessionStore)).addPathPatterns("/**").order(0);
+        //用于运维接口的权限校验，只处理带有@AdminOnly的接口
+        registry.addInterceptor(new AdminInterceptor(adminUserIds)).addPathPatterns("/**").order(1);
+        //用于接口限流，只处理带有@RateLimit的接口
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiter, trustedProxies)).addPathPatterns("/**").order(2);
     }
 }
@@ -0,0 +1,59 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.MigratingCacheCodec;
+import com.hmdp.utils.SmileCacheCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * <p>
+ * Redis相关配置，包括发布订阅的监听容器和缓存的序列化方式
+ * </p>
+ */
+@Configuration
+public class RedisConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        // 所有的pub/sub订阅（如多节点的本地缓存失效广播）共享同一个监听容器
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    /**
+     * 缓存专用的RedisTemplate，key为字符串，value为CacheCodec序列化后的字节
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> cacheRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    /**
+     * 缓存的序列化方式：smile(二进制)、json(便于排查问题)、migrate(写smile，同时兼容读取json，默认)
+     */
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:migrate}") String codec) {
+        switch (codec) {
+            case "smile":
+                return new SmileCacheCodec();
+            case "json":
+                return new JsonCacheCodec();
+            case "migrate":
+                return new MigratingCacheCodec(new SmileCacheCodec(), new JsonCacheCodec());
+            default:
+                throw new IllegalArgumentException("不支持的缓存序列化方式：" + codec);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimit;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
@@ -33,6 +34,7 @@ public class BlogController {
         return blogService.saveBlog(blog);
     }
 
+    @RateLimit(window = 1, user = 5)
     @PutMapping("/like/{id}")
     public Result likeBlog(@PathVariable("id") Long id) {
         return blogService.likeBlog(id);
@@ -44,12 +46,21 @@ public class BlogController {
         UserDTO user = UserHolder.getUser();
         // 根据用户查询
         Page<Blog> page = blogService.query()
-                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
         return Result.ok(records);
     }
 
+    /**
+     * 按游标分页查询自己的笔记，从新到旧
+     * @param cursor 上一页返回的游标，第一页不传
+     */
+    @GetMapping("/of/me/scroll")
+    public Result scrollMyBlog(@RequestParam(value = "cursor", required = false) String cursor) {
+        return blogService.queryBlogOfUser(UserHolder.getUser().getId(), cursor);
+    }
+
     @GetMapping("/hot")
     public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
         return blogService.queryHotBlog(current);
@@ -71,14 +82,34 @@ public class BlogController {
             @RequestParam("id") Long id) {
         // 根据用户查询
         Page<Blog> page = blogService.query()
-                .eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
         return Result.ok(records);
     }
+
+    /**
+     * 按游标分页查询用户的笔记，从新到旧
+     * @param cursor 上一页返回的游标，第一页不传
+     */
+    @GetMapping("/of/user/scroll")
+    public Result scrollBlogByUserId(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam("id") Long id) {
+        return blogService.queryBlogOfUser(id, cursor);
+    }
+
     @GetMapping("/of/follow")
     public Result queryBlogOfFollow(
             @RequestParam("lastId") Long max, @RequestParam(value = "offset", defaultValue = "0") Integer offset){
         return blogService.queryBlogOfFollow(max, offset);
     }
+
+    /**
+     * 笔记推送的吞吐统计：每秒写入收件箱次数、累计写入次数、完成和待处理的推送任务数
+     */
+    @GetMapping("/feed/stats")
+    public Result queryFeedStats() {
+        return blogService.queryFeedStats();
+    }
 }
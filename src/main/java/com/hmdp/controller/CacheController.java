@@ -0,0 +1,34 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.CacheClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存的运维接口
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    /**
+     * 查看当前节点各级缓存的命中统计
+     * @return 本地缓存、Redis的命中与未命中次数，本地缓存的条目数
+     */
+    @AdminOnly
+    @GetMapping("stats")
+    public Result queryStats() {
+        return Result.ok(cacheClient.stats());
+    }
+}
@@ -1,12 +1,10 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.AdminOnly;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -44,10 +42,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库和GEO索引
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -62,6 +58,27 @@ public class ShopController {
         return shopService.update(shop);
     }
 
+    /**
+     * 删除商铺
+     * @param id 商铺id
+     * @return 无
+     */
+    @AdminOnly
+    @DeleteMapping("/{id}")
+    public Result deleteShop(@PathVariable("id") Long id) {
+        return shopService.deleteShop(id);
+    }
+
+    /**
+     * 全量重建商铺的GEO索引
+     * @return 写入索引的商铺数
+     */
+    @AdminOnly
+    @PostMapping("/geo/rebuild")
+    public Result rebuildGeoIndex() {
+        return shopService.rebuildGeoIndex();
+    }
+
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
@@ -78,6 +95,44 @@ public class ShopController {
         return shopService.queryShopByType(typeId, current, x, y);
     }
 
+    /**
+     * 根据商铺类型按距离查询附近的商铺，按游标分页
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param cursor 上一页返回的游标，第一页不传
+     * @param minPrice 最低均价
+     * @param maxPrice 最高均价
+     * @param minScore 最低评分，乘10
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/type/nearby")
+    public Result queryShopNearby(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "minPrice", required = false) Long minPrice,
+            @RequestParam(value = "maxPrice", required = false) Long maxPrice,
+            @RequestParam(value = "minScore", required = false) Integer minScore
+    ) {
+        return shopService.queryShopNearby(typeId, x, y, cursor, minPrice, maxPrice, minScore);
+    }
+
+    /**
+     * 根据商铺类型按游标分页查询商铺信息
+     * @param typeId 商铺类型
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/type/scroll")
+    public Result scrollShopByType(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByType(typeId, cursor);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
@@ -89,11 +144,31 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 按相关度分页查询
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 搜索框的自动补全
+     * @param prefix 已输入的商铺名称前缀
+     * @return 商铺名称列表
+     */
+    @GetMapping("/suggest")
+    public Result suggestShopName(@RequestParam(value = "prefix", required = false) String prefix) {
+        return shopService.suggestShopName(prefix);
+    }
+
+    /**
+     * 根据商铺名称关键字按游标分页查询商铺信息
+     * @param name 商铺名称关键字
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/name/scroll")
+    public Result scrollShopByName(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByName(name, cursor);
     }
 }
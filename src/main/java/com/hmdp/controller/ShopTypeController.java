@@ -4,12 +4,17 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.ReferenceDataCache;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * <p>
@@ -25,10 +30,34 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询商铺类型，数据来自本地快照，客户端携带的If-None-Match与快照一致时返回304
+     * @param ifNoneMatch 客户端缓存的ETag
+     * @return 商铺类型列表
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-        List<ShopType> typeList = typeService
-                .query().orderByAsc("sort").list();
-        return Result.ok(typeList);
+    public Result queryTypeList(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletResponse response
+    ) {
+        ReferenceDataCache.Snapshot<ShopType> snapshot = typeService.queryTypeList();
+        response.setHeader(HttpHeaders.ETAG, snapshot.getEtag());
+        // 允许客户端缓存，但每次使用前需要校验ETag
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (snapshot.matches(ifNoneMatch)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+        return Result.ok(snapshot.getList());
+    }
+
+    /**
+     * 修改商铺类型后通知所有节点重新加载
+     * @return 新的版本号
+     */
+    @AdminOnly
+    @PostMapping("/refresh")
+    public Result refreshTypeList() {
+        return typeService.refreshTypeList();
     }
 }
@@ -9,6 +9,7 @@ import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimit;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -35,6 +36,7 @@ public class UserController {
     /**
      * 发送手机验证码
      */
+    @RateLimit(window = 60, ip = 10, global = 1000)
     @PostMapping("code")
     public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
         //发送短信验证码并保存验证码
@@ -44,6 +46,10 @@ public class UserController {
     /**
      * 登录功能
      * @param loginForm 登录参数，包含手机号、验证码；或者手机号、密码
+     * @return 登录凭证，格式取决于hmdp.login.mode：
+     * redis模式（默认）data为token字符串；
+     * signed模式data为对象 {"token": access token, "refreshToken": refresh token}，
+     * 请求时仍在authorization请求头中携带token，token过期后在refresh-token请求头中携带refreshToken调用/user/refresh
      */
     @PostMapping("/login")
     public Result login(@RequestBody LoginFormDTO loginForm, HttpSession session){
@@ -56,8 +62,17 @@ public class UserController {
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout(){
-        return Result.fail("功能未完成");
+    public Result logout(@RequestHeader(value = "authorization", required = false) String token){
+        return userService.logout(token);
+    }
+
+    /**
+     * 用refresh token换取新的token，仅签名token模式（hmdp.login.mode=signed）支持
+     * @return 新的token
+     */
+    @PostMapping("/refresh")
+    public Result refresh(@RequestHeader(value = "refresh-token", required = false) String refreshToken){
+        return userService.refresh(refreshToken);
     }
 
     @GetMapping("/me")
@@ -3,9 +3,13 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.RateLimit;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
@@ -22,8 +26,27 @@ public class VoucherOrderController {
     @Resource
     private IVoucherOrderService voucherOrderService;
 
+    @RateLimit(window = 1, user = 5, ip = 20, global = 5000)
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查看死信队列中的订单
+     */
+    @AdminOnly
+    @GetMapping("dlq")
+    public Result queryDeadOrders(@RequestParam(value = "count", defaultValue = "10") Integer count) {
+        return voucherOrderService.queryDeadOrders(count);
+    }
+
+    /**
+     * 将死信队列中最早的count个订单重新投递到stream.orders
+     */
+    @AdminOnly
+    @PostMapping("dlq/replay")
+    public Result replayDeadOrders(@RequestParam(value = "count", defaultValue = "10") Integer count) {
+        return voucherOrderService.replayDeadOrders(count);
+    }
 }
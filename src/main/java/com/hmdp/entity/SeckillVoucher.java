@@ -37,6 +37,11 @@ public class SeckillVoucher implements Serializable {
      */
     private Integer stock;
 
+    /**
+     * Redis中秒杀库存的分片数，大于1时按分片保存库存；Redis数据丢失后按此重建
+     */
+    private Integer stockShards;
+
     /**
      * 创建时间
      */
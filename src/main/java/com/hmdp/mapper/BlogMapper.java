@@ -2,6 +2,11 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +18,23 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条UPDATE批量累加点赞数，key为笔记id，value为增量
+     */
+    int updateLikedBatch(@Param("deltas") Map<Long, Long> deltas);
+
+    /**
+     * 快照中已经写回数据库的笔记id
+     */
+    List<Long> selectLikeFlushed(@Param("snapshotId") long snapshotId, @Param("blogIds") Collection<Long> blogIds);
+
+    /**
+     * 记录快照中已经写回的笔记，与updateLikedBatch在同一个事务中执行
+     */
+    int insertLikeFlushed(@Param("snapshotId") long snapshotId, @Param("blogIds") Collection<Long> blogIds);
+
+    /**
+     * 删除之前快照的写回记录
+     */
+    int deleteLikeFlushedBefore(@Param("snapshotId") long snapshotId);
 }
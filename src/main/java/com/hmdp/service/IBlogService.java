@@ -22,4 +22,8 @@ public interface IBlogService extends IService<Blog> {
     Result saveBlog(Blog blog);
 
     Result queryBlogOfFollow(Long max, Integer offset);
+
+    Result queryFeedStats();
+
+    Result queryBlogOfUser(Long userId, String cursor);
 }
@@ -13,4 +13,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ISeckillVoucherService extends IService<SeckillVoucher> {
 
+    /**
+     * 将秒杀库存和秒杀时间写入Redis，覆盖已有库存，按stockShards分片
+     */
+    void saveSeckillToRedis(SeckillVoucher seckillVoucher);
 }
@@ -16,7 +16,24 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 
+    Result deleteShop(Long id);
+
+    Result rebuildGeoIndex();
+
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result queryShopByType(Integer typeId, String cursor);
+
+    Result queryShopNearby(Integer typeId, Double x, Double y, String cursor,
+                           Long minPrice, Long maxPrice, Integer minScore);
+
+    Result queryShopByName(String name, String cursor);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result suggestShopName(String prefix);
 }
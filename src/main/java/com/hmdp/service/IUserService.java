@@ -21,6 +21,10 @@ public interface IUserService extends IService<User> {
 
     Result login(LoginFormDTO loginForm, HttpSession session);
 
+    Result logout(String token);
+
+    Result refresh(String refreshToken);
+
     Result sign();
 
     Result signCount();
@@ -1,8 +1,6 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
@@ -14,30 +12,120 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ScrollCursor;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_FLUSH_GEN_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_SNAPSHOT_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+import static com.hmdp.utils.RedisConstants.FEED_BIG_V_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_CHECKPOINT_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_CHECKPOINT_TTL;
+import static com.hmdp.utils.RedisConstants.FEED_GROUP;
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_STREAM;
+import static com.hmdp.utils.RedisConstants.LOCK_HOT_REBUILD_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_LIKE_FLUSH_KEY;
+import static com.hmdp.utils.SystemConstants.BLOG_HOT_COMMENT_WEIGHT;
+import static com.hmdp.utils.SystemConstants.BLOG_HOT_EPOCH;
+import static com.hmdp.utils.SystemConstants.FEED_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.FEED_PUSH_BATCH_SIZE;
+import static com.hmdp.utils.SystemConstants.LIKE_FLUSH_BATCH_SIZE;
 
 /**
  * <p>
  *  服务实现类
  * </p>
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKE_INIT_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        LIKE_INIT_SCRIPT = new DefaultRedisScript<>();
+        LIKE_INIT_SCRIPT.setLocation(new ClassPathResource("like_init.lua"));
+        LIKE_INIT_SCRIPT.setResultType(List.class);
+    }
+
+    /**
+     * 回收推送任务时每次XPENDING读取的条数
+     */
+    private static final long FANOUT_RECLAIM_PAGE_SIZE = 100;
+
+    private static final Comparator<ZSetOperations.TypedTuple<String>> FEED_ORDER =
+            Comparator.comparing((ZSetOperations.TypedTuple<String> tuple) -> tuple.getScore(), Comparator.reverseOrder())
+                    .thenComparing(ZSetOperations.TypedTuple::getValue, Comparator.reverseOrder());
+
     @Resource
     private IUserService userService;
 
@@ -47,6 +135,119 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 粉丝数超过该值的作者不推送，由粉丝读取时从发件箱拉取
+     */
+    @Value("${hmdp.feed.push-threshold:5000}")
+    private int pushThreshold;
+
+    /**
+     * 收件箱、发件箱保留的最大笔记数
+     */
+    @Value("${hmdp.feed.inbox-size:1000}")
+    private int inboxSize;
+
+    /**
+     * 推送任务的消费者数量，每个消费者一个线程
+     */
+    @Value("${hmdp.feed.fanout.workers:2}")
+    private int fanoutWorkers;
+
+    /**
+     * pending-list中的推送任务空闲超过该时间（秒）后，被回收线程认领并从检查点继续
+     */
+    @Value("${hmdp.feed.fanout.reclaim-idle:30}")
+    private long fanoutReclaimIdleSeconds;
+
+    /**
+     * 推送任务的最大投递次数，超过后放弃
+     */
+    @Value("${hmdp.feed.fanout.max-deliveries:5}")
+    private long fanoutMaxDeliveries;
+
+    /**
+     * 点赞数增量写回数据库的间隔（秒）
+     */
+    @Value("${hmdp.blog.like.flush-interval:5}")
+    private long likeFlushInterval;
+
+    /**
+     * 热度衰减周期（秒）
+     */
+    @Value("${hmdp.blog.hot.decay:45000}")
+    private long hotDecaySeconds;
+
+    /**
+     * 热度排行保留的笔记数
+     */
+    @Value("${hmdp.blog.hot.size:1000}")
+    private int hotSize;
+
+    //点赞数写回、热度排行重建线程
+    private ScheduledExecutorService likeFlushExecutor;
+
+    //推送任务消费线程池
+    private ExecutorService fanoutExecutor;
+
+    //pending-list回收和吞吐统计线程
+    private ScheduledExecutorService fanoutScheduler;
+
+    //写入收件箱的总次数、完成的推送任务数
+    private final LongAdder inboxWrites = new LongAdder();
+    private final LongAdder fanoutJobs = new LongAdder();
+
+    //最近一秒写入收件箱的次数
+    private volatile long inboxWritesPerSecond;
+    private long lastInboxWrites;
+
+    @PostConstruct
+    private void init() {
+        // 创建消费者组，已存在时忽略：XGROUP CREATE stream.feed g1 0 MKSTREAM
+        try {
+            stringRedisTemplate.opsForStream().createGroup(FEED_STREAM, ReadOffset.from("0"), FEED_GROUP);
+        } catch (Exception e) {
+            log.debug("推送任务消费者组已存在");
+        }
+        fanoutExecutor = Executors.newFixedThreadPool(fanoutWorkers);
+        // 消费者名称在节点和线程间唯一：c-pid@host-序号
+        String node = ManagementFactory.getRuntimeMXBean().getName();
+        for (int i = 0; i < fanoutWorkers; i++) {
+            fanoutExecutor.submit(new FanoutHandler("c-" + node + "-" + i));
+        }
+        fanoutScheduler = Executors.newScheduledThreadPool(2);
+        long interval = Math.max(1, fanoutReclaimIdleSeconds / 2);
+        fanoutScheduler.scheduleWithFixedDelay(
+                new PendingFanoutReclaimer("reclaimer-" + node), interval, interval, TimeUnit.SECONDS);
+        fanoutScheduler.scheduleAtFixedRate(() -> {
+            long total = inboxWrites.sum();
+            inboxWritesPerSecond = total - lastInboxWrites;
+            lastInboxWrites = total;
+        }, 1, 1, TimeUnit.SECONDS);
+        likeFlushExecutor = Executors.newSingleThreadScheduledExecutor();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+            likeFlushExecutor.execute(this::rebuildHotRanking);
+        }
+        likeFlushExecutor.scheduleWithFixedDelay(this::flushLikes, likeFlushInterval, likeFlushInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        fanoutExecutor.shutdownNow();
+        fanoutScheduler.shutdownNow();
+        // 停机前把剩余的增量写回数据库
+        likeFlushExecutor.shutdown();
+        flushLikes();
+    }
+
     @Override
     public Result queryBlogById(Long id) {
         // 1.查询blog
@@ -56,56 +257,156 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         // 2.查询blog有关的用户
         queryBlogUser(blog);
-        // 3.查询blog是否被点赞
-        isBlogLiked(blog);
+        // 3.查询blog是否被点赞，以及Redis中的点赞数
+        isBlogLiked(Collections.singletonList(blog));
+        queryLikeCounts(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        // 1.从热度排行中查询当前页 ZREVRANGE blog:hot start end
+        long start = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        Set<String> top = stringRedisTemplate.opsForZSet()
+                .reverseRange(BLOG_HOT_KEY, start, start + SystemConstants.MAX_PAGE_SIZE - 1);
+        if (top == null || top.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.批量查询blog
+        List<Blog> records = queryBlogs(top.stream().map(Long::valueOf).collect(Collectors.toList()));
+        // 批量查询用户
+        queryBlogUsers(records);
+        // 查询是否点赞，以及Redis中的点赞数
+        isBlogLiked(records);
+        queryLikeCounts(records);
         return Result.ok(records);
     }
 
     @Override
     public Result likeBlog(Long id) {
-        //获取登录用户
+        // 1.判断笔记是否存在
+        Blog blog = cacheClient.queryWithPassThrough(CACHE_BLOG_KEY, id, Blog.class, this::getById, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.确保点赞数已加载到Redis，脚本据此更新热度排行（缓存中的对象是共享的，复制一份）
+        queryLikeCounts(Collections.singletonList(BeanUtil.copyProperties(blog, Blog.class)));
+        // 3.获取登录用户
         Long userId = UserHolder.getUser().getId();
-        //判断当前登录用户是否已经点赞
-        String key = BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        if(score == null){
-            //如果未点赞，可以点赞
-            //数据库点赞数+1
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            if(isSuccess){
-                //保存用户到Redis的set集合
-//                stringRedisTemplate.opsForSet().add(key,userId.toString());
-                //保存用户到Redis的zset集合 zadd key value score
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
-        }else{
-            //如果已点赞，取消点赞
-            //数据库点赞数-1
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            if(isSuccess){
-                //把用户从Redis的set集合移除
-//                stringRedisTemplate.opsForSet().remove(key,userId.toString());
-                //把用户从Redis的Zset集合移除
-                stringRedisTemplate.opsForZSet().remove(key,userId.toString());
+        // 4.执行lua脚本：切换点赞状态、累计点赞数增量并更新热度，数据库由定时任务批量写回
+        long comments = blog.getComments() == null ? 0 : blog.getComments();
+        stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DELTA_KEY, BLOG_HOT_KEY),
+                userId.toString(), id.toString(), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(hotBase(blog)), String.valueOf(comments * BLOG_HOT_COMMENT_WEIGHT),
+                String.valueOf(hotSize)
+        );
+        return Result.ok();
+    }
+
+    /**
+     * 把Redis中累计的点赞数增量批量写回数据库。
+     * 先把增量hash重命名为快照，之后的点赞写入新的增量hash；每批写回成功后从快照中删除，失败的留到下次继续。
+     * 每批写回前后各增加一次写回代数，初始化点赞数时据此判断数据库的值与增量是否一致。
+     * 每个快照有一个id，写回的笔记与点赞数在同一个事务中记录到tb_blog_like_flush，
+     * 数据库已提交而快照删除失败时，下次重新读取同一个快照也不会重复累加
+     */
+    private void flushLikes() {
+        // 多个节点只需要一个执行
+        RLock lock = redissonClient.getLock(LOCK_LIKE_FLUSH_KEY);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock();
+            if (!locked) {
+                return;
+            }
+            // 1.上次未写完的快照优先处理，否则生成新的快照
+            long snapshotId;
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_FLUSHING_KEY))) {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_DELTA_KEY))) {
+                    return;
+                }
+                // 1.1.先分配快照id再重命名，重命名前中断时下次重新分配
+                snapshotId = stringRedisTemplate.opsForValue().increment(BLOG_LIKE_SNAPSHOT_KEY);
+                stringRedisTemplate.rename(BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY);
+                // 1.2.之前的快照都已写完，清理写回记录
+                getBaseMapper().deleteLikeFlushedBefore(snapshotId);
+            } else {
+                String current = stringRedisTemplate.opsForValue().get(BLOG_LIKE_SNAPSHOT_KEY);
+                snapshotId = current == null
+                        ? stringRedisTemplate.opsForValue().increment(BLOG_LIKE_SNAPSHOT_KEY)
+                        : Long.parseLong(current);
+            }
+            // 2.读取快照，忽略点赞后又取消的笔记
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(BLOG_LIKE_FLUSHING_KEY);
+            List<Object> unchanged = new ArrayList<>();
+            Map<Long, Long> deltas = new LinkedHashMap<>(entries.size());
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                long delta = Long.parseLong(entry.getValue().toString());
+                if (delta == 0) {
+                    unchanged.add(entry.getKey());
+                } else {
+                    deltas.put(Long.valueOf(entry.getKey().toString()), delta);
+                }
+            }
+            if (!unchanged.isEmpty()) {
+                stringRedisTemplate.opsForHash().delete(BLOG_LIKE_FLUSHING_KEY, unchanged.toArray());
+            }
+            // 3.分批写回 UPDATE tb_blog SET liked = liked + CASE id WHEN ? THEN ? ... END WHERE id IN (...)
+            Map<Long, Long> batch = new LinkedHashMap<>(LIKE_FLUSH_BATCH_SIZE);
+            for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() == LIKE_FLUSH_BATCH_SIZE) {
+                    flushLikeBatch(snapshotId, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                flushLikeBatch(snapshotId, batch);
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会停止
+            log.error("点赞数写回数据库异常", e);
+        } finally {
+            if (locked) {
+                lock.unlock();
             }
         }
-        return Result.ok();
+    }
+
+    private void flushLikeBatch(long snapshotId, Map<Long, Long> batch) {
+        // 代数为奇数期间数据库已更新而快照还没删除，初始化点赞数时不能同时加上两者
+        beginLikeFlush();
+        try {
+            // 跳过这个快照中已经写回过的笔记，写回记录与点赞数在同一个事务中提交
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<Long, Long> pending = new LinkedHashMap<>(batch);
+                getBaseMapper().selectLikeFlushed(snapshotId, batch.keySet()).forEach(pending::remove);
+                if (!pending.isEmpty()) {
+                    getBaseMapper().insertLikeFlushed(snapshotId, pending.keySet());
+                    getBaseMapper().updateLikedBatch(pending);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 事务已回滚，数据库与快照仍然一致
+            stringRedisTemplate.opsForValue().increment(BLOG_LIKE_FLUSH_GEN_KEY);
+            throw e;
+        }
+        Object[] fields = batch.keySet().stream().map(String::valueOf).toArray();
+        stringRedisTemplate.opsForHash().delete(BLOG_LIKE_FLUSHING_KEY, fields);
+        // 删除快照失败时代数保持奇数，直到下次写回删除成功
+        stringRedisTemplate.opsForValue().increment(BLOG_LIKE_FLUSH_GEN_KEY);
+    }
+
+    /**
+     * 写回代数加到奇数，上次删除快照失败遗留的奇数不再增加
+     */
+    private void beginLikeFlush() {
+        String gen = stringRedisTemplate.opsForValue().get(BLOG_LIKE_FLUSH_GEN_KEY);
+        if (gen == null || Long.parseLong(gen) % 2 == 0) {
+            stringRedisTemplate.opsForValue().increment(BLOG_LIKE_FLUSH_GEN_KEY);
+        }
     }
 
     @Override
@@ -118,13 +419,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         //解析出其中的用户id
         List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        String idStr = StrUtil.join(",", ids);
-        //根据用户id查询用户 WHERE id IN ( 5 , 1 ) ORDER BY FIELD(id, 5, 1)
-        List<UserDTO> userDTOS = userService.query()
-                .in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        //根据用户id批量查询用户，结果按ids的顺序排列
+        List<UserDTO> userDTOS = new ArrayList<>(queryUserMap(ids).values());
         //返回
         return Result.ok(userDTOS);
     }
@@ -139,32 +435,261 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if(!isSuccess){
             return Result.fail("新增笔记失败!");
         }
-        // 3.查询笔记作者的所有粉丝 select * from tb_follow where follow_user_id = ?
-        List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
-        // 4.推送笔记id给所有粉丝
-        for (Follow follow : follows) {
-            // 4.1.获取粉丝id
-            Long userId = follow.getUserId();
-            // 4.2.推送
-            String key = FEED_KEY + userId;
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
-        }
-        // 5.返回id
+        // 3.加入热度排行，只保留排名靠前的hotSize篇
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blog.getId().toString(), hotScore(blog, 0));
+        stringRedisTemplate.opsForZSet().removeRange(BLOG_HOT_KEY, 0, -(hotSize + 1L));
+        // 4.统计笔记作者的粉丝数 select count(*) from tb_follow where follow_user_id = ?
+        Long authorId = user.getId();
+        String blogId = blog.getId().toString();
+        long timestamp = System.currentTimeMillis();
+        Integer followers = followService.query().eq("follow_user_id", authorId).count();
+        if (followers > pushThreshold) {
+            // 5.大V：只写入自己的发件箱，粉丝读取时拉取
+            String outbox = FEED_OUTBOX_KEY + authorId;
+            stringRedisTemplate.opsForZSet().add(outbox, blogId, timestamp);
+            stringRedisTemplate.opsForZSet().removeRange(outbox, 0, -(inboxSize + 1L));
+            stringRedisTemplate.opsForSet().add(FEED_BIG_V_KEY, authorId.toString());
+        } else if (followers > 0) {
+            // 6.普通作者：写入推送任务队列，由后台线程分页推送，发布耗时与粉丝数无关
+            // XADD stream.feed * authorId .. blogId .. timestamp ..
+            Map<String, String> job = new HashMap<>(4);
+            job.put("authorId", authorId.toString());
+            job.put("blogId", blogId);
+            job.put("timestamp", String.valueOf(timestamp));
+            stringRedisTemplate.opsForStream().add(FEED_STREAM, job);
+        }
+        // 7.返回id
         return Result.ok(blog.getId());
     }
 
     @Override
+    public Result queryFeedStats() {
+        //XPENDING stream.feed g1
+        PendingMessagesSummary pending = stringRedisTemplate.opsForStream().pending(FEED_STREAM, FEED_GROUP);
+        Map<String, Object> stats = new HashMap<>(8);
+        stats.put("inboxWritesPerSecond", inboxWritesPerSecond);
+        stats.put("inboxWrites", inboxWrites.sum());
+        stats.put("completedJobs", fanoutJobs.sum());
+        stats.put("pendingJobs", pending == null ? 0 : pending.getTotalPendingMessages());
+        return Result.ok(stats);
+    }
+
+    @Override
+    public Result queryBlogOfUser(Long userId, String cursor) {
+        Long lastId;
+        try {
+            lastId = ScrollCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标！");
+        }
+        // select * from tb_blog where user_id = ? and id < ? order by id desc limit ?，走(user_id, id)索引
+        List<Blog> blogs = query()
+                .eq("user_id", userId)
+                .lt(lastId != null, "id", lastId)
+                .orderByDesc("id")
+                .last("limit " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        return Result.ok(ScrollCursor.of(blogs, SystemConstants.MAX_PAGE_SIZE, Blog::getId));
+    }
+
+    private class FanoutHandler implements Runnable {
+        private final Consumer consumer;
+
+        private FanoutHandler(String consumerName) {
+            this.consumer = Consumer.from(FEED_GROUP, consumerName);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    //XREADGROUP GROUP g1 consumer COUNT 1 BLOCK 2000 STREAMS stream.feed >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(FEED_STREAM, ReadOffset.lastConsumed())
+                    );
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    for (MapRecord<String, Object, Object> record : list) {
+                        fanOut(record);
+                    }
+                } catch (Exception e) {
+                    //失败的任务留在pending-list中，由PendingFanoutReclaimer认领后从检查点继续
+                    log.error("推送笔记异常", e);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 定时扫描pending-list，认领空闲超时的推送任务（包括已宕机节点的任务）从检查点继续，超过投递次数的放弃
+     */
+    private class PendingFanoutReclaimer implements Runnable {
+        private final String consumerName;
+
+        private PendingFanoutReclaimer(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            try {
+                reclaim();
+            } catch (Exception e) {
+                // 异常不能抛出，否则定时任务会停止
+                log.error("回收推送任务异常", e);
+            }
+        }
+
+        private void reclaim() {
+            Duration idle = Duration.ofSeconds(fanoutReclaimIdleSeconds);
+            // 按id分页遍历整个pending-list，前面的任务还在推送中时，后面空闲的任务也能被回收
+            Range<String> range = Range.unbounded();
+            while (true) {
+                //XPENDING stream.feed g1 start + pageSize
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(FEED_STREAM, FEED_GROUP, range, FANOUT_RECLAIM_PAGE_SIZE);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                for (PendingMessage message : pending) {
+                    if (message.getElapsedTimeSinceLastDelivery().compareTo(idle) < 0) {
+                        continue;
+                    }
+                    reclaim(message, idle);
+                }
+                if (pending.size() < FANOUT_RECLAIM_PAGE_SIZE) {
+                    return;
+                }
+                // 下一页从本页最后一条之后开始
+                RecordId last = pending.get(pending.size() - 1).getId();
+                range = Range.rightUnbounded(Range.Bound.inclusive(
+                        RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+            }
+        }
+
+        private void reclaim(PendingMessage message, Duration idle) {
+            //XCLAIM带最小空闲时间，多个节点同时回收时只有一个能认领成功
+            List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xClaim(FEED_STREAM.getBytes(StandardCharsets.UTF_8),
+                            FEED_GROUP, consumerName, idle, message.getId()));
+            if (records == null) {
+                return;
+            }
+            for (ByteRecord byteRecord : records) {
+                MapRecord<String, Object, Object> record = stringRedisTemplate.opsForStream().deserializeRecord(byteRecord);
+                if (message.getTotalDeliveryCount() >= fanoutMaxDeliveries) {
+                    log.error("推送任务超过最大投递次数，放弃，id:{}，任务:{}", record.getId(), record.getValue());
+                    complete(record.getId());
+                    continue;
+                }
+                try {
+                    fanOut(record);
+                } catch (Exception e) {
+                    log.error("重试推送任务失败，id:{}", record.getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行一个推送任务：按主键分页读取粉丝，每页用一次pipeline推送笔记、裁剪收件箱并保存检查点
+     */
+    private void fanOut(MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = record.getValue();
+        Long authorId = Long.valueOf(value.get("authorId").toString());
+        byte[] member = value.get("blogId").toString().getBytes(StandardCharsets.UTF_8);
+        double timestamp = Double.parseDouble(value.get("timestamp").toString());
+        String checkpointKey = FEED_CHECKPOINT_KEY + record.getId().getValue();
+        byte[] rawCheckpointKey = checkpointKey.getBytes(StandardCharsets.UTF_8);
+        long checkpointSeconds = TimeUnit.HOURS.toSeconds(FEED_CHECKPOINT_TTL);
+        // 1.从检查点继续，之前推送过的粉丝不再重复推送
+        String checkpoint = stringRedisTemplate.opsForValue().get(checkpointKey);
+        long lastId = checkpoint == null ? 0 : Long.parseLong(checkpoint);
+        while (true) {
+            // 2.查询下一页粉丝 select id, user_id from tb_follow where follow_user_id = ? and id > ? order by id limit ?
+            List<Follow> follows = followService.query()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + FEED_PUSH_BATCH_SIZE)
+                    .list();
+            if (follows.isEmpty()) {
+                break;
+            }
+            // 3.推送、只保留最新的inboxSize条，最后保存检查点
+            // 中途失败时检查点未更新，重试会重新推送这一页，ZADD是幂等的
+            long pageEnd = follows.get(follows.size() - 1).getId();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Follow follow : follows) {
+                    byte[] key = (FEED_KEY + follow.getUserId()).getBytes(StandardCharsets.UTF_8);
+                    connection.zSetCommands().zAdd(key, timestamp, member);
+                    connection.zSetCommands().zRemRange(key, 0, -(inboxSize + 1L));
+                }
+                connection.stringCommands().setEx(rawCheckpointKey, checkpointSeconds,
+                        String.valueOf(pageEnd).getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
+            inboxWrites.add(follows.size());
+            if (follows.size() < FEED_PUSH_BATCH_SIZE) {
+                break;
+            }
+            lastId = pageEnd;
+        }
+        // 4.确认任务并删除检查点
+        complete(record.getId());
+        fanoutJobs.increment();
+    }
+
+    private void complete(RecordId id) {
+        //XACK stream.feed g1 id
+        stringRedisTemplate.opsForStream().acknowledge(FEED_STREAM, FEED_GROUP, id);
+        stringRedisTemplate.delete(FEED_CHECKPOINT_KEY + id.getValue());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public Result queryBlogOfFollow(Long max, Integer offset) {
         // 1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        // 2.查询收件箱 ZREVRANGEBYSCORE key Max Min LIMIT offset count
-        String key = FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(key, 0, max, offset, 2);
-        // 3.非空判断
-        if (typedTuples == null || typedTuples.isEmpty()) {
+        // 2.自己的收件箱，以及关注的大V的发件箱
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        Set<String> bigVs = stringRedisTemplate.opsForSet().intersect("follows:" + userId, FEED_BIG_V_KEY);
+        if (bigVs != null) {
+            bigVs.forEach(authorId -> keys.add(FEED_OUTBOX_KEY + authorId));
+        }
+        // 3.一次pipeline查询所有信箱 ZREVRANGEBYSCORE key Max 0 LIMIT 0 offset+count
+        // 合并结果的前offset+count条一定在各信箱的前offset+count条之中
+        int limit = offset + FEED_PAGE_SIZE;
+        RedisZSetCommands.Range range = RedisZSetCommands.Range.range().gte(0).lte(max);
+        RedisZSetCommands.Limit first = RedisZSetCommands.Limit.limit().count(limit);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.zSetCommands().zRevRangeByScoreWithScores(key.getBytes(StandardCharsets.UTF_8), range, first);
+            }
+            return null;
+        });
+        List<ZSetOperations.TypedTuple<String>> merged = new ArrayList<>();
+        for (Object result : results) {
+            if (result instanceof Collection) {
+                merged.addAll((Collection<ZSetOperations.TypedTuple<String>>) result);
+            }
+        }
+        // 按时间戳倒序合并，时间戳相同时与ZREVRANGEBYSCORE一样按成员倒序，跳过offset条
+        merged.sort(FEED_ORDER);
+        if (merged.size() <= offset) {
             return Result.ok();
         }
+        List<ZSetOperations.TypedTuple<String>> typedTuples = merged.subList(offset, Math.min(limit, merged.size()));
         // 4.解析数据：blogId、minTime（时间戳）、offset
         List<Long> ids = new ArrayList<>(typedTuples.size());
         long minTime = 0; // 2
@@ -181,15 +706,13 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        // 5.根据id查询blog
-        String idStr = StrUtil.join(",", ids);
-        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
-        for (Blog blog : blogs) {
-            // 5.1.查询blog有关的用户
-            queryBlogUser(blog);
-            // 5.2.查询blog是否被点赞
-            isBlogLiked(blog);
-        }
+        // 5.根据id批量查询blog
+        List<Blog> blogs = queryBlogs(ids);
+        // 5.1.批量查询blog有关的用户
+        queryBlogUsers(blogs);
+        // 5.2.查询blog是否被点赞，以及Redis中的点赞数
+        isBlogLiked(blogs);
+        queryLikeCounts(blogs);
         // 6.封装并返回
         ScrollResult r = new ScrollResult();
         r.setList(blogs);
@@ -199,6 +722,79 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
 
+    /**
+     * 根据id批量查询blog（一次MGET，未命中的一次IN查询），按ids的顺序排列，不存在的blog被忽略
+     */
+    private List<Blog> queryBlogs(List<Long> ids) {
+        Map<Long, Blog> blogMap = cacheClient.queryBatch(
+                CACHE_BLOG_KEY, ids, Blog.class,
+                blogIds -> listByIds(blogIds).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        // 缓存中的对象是共享的，复制一份再填充用户和点赞信息
+        return blogMap.values().stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 热度 = log10(点赞数 + 评论数 * 权重) + 发布时间 / 衰减周期，
+     * 晚发布一个衰减周期的笔记需要多10倍的互动才能排在一起，旧笔记的分数不需要定时重算
+     */
+    private double hotScore(Blog blog, long liked) {
+        long comments = blog.getComments() == null ? 0 : blog.getComments();
+        long weight = Math.max(liked + comments * BLOG_HOT_COMMENT_WEIGHT, 1);
+        return Math.log10(weight) + hotBase(blog);
+    }
+
+    private double hotBase(Blog blog) {
+        LocalDateTime createTime = blog.getCreateTime() == null ? LocalDateTime.now() : blog.getCreateTime();
+        return (double) (createTime.toEpochSecond(ZoneOffset.UTC) - BLOG_HOT_EPOCH) / hotDecaySeconds;
+    }
+
+    /**
+     * 热度排行不存在时（首次启动或Redis数据丢失），按主键分页扫描tb_blog重建
+     */
+    private void rebuildHotRanking() {
+        RLock lock = redissonClient.getLock(LOCK_HOT_REBUILD_KEY);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock();
+            if (!locked || Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+                return;
+            }
+            long lastId = 0;
+            while (true) {
+                // select id, liked, comments, create_time from tb_blog where id > ? order by id limit ?
+                List<Blog> blogs = query().select("id", "liked", "comments", "create_time")
+                        .gt("id", lastId).orderByAsc("id").last("limit " + FEED_PUSH_BATCH_SIZE).list();
+                if (blogs.isEmpty()) {
+                    break;
+                }
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    byte[] key = BLOG_HOT_KEY.getBytes(StandardCharsets.UTF_8);
+                    for (Blog blog : blogs) {
+                        long liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                        connection.zSetCommands().zAdd(key, hotScore(blog, liked),
+                                blog.getId().toString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    // 只保留排名靠前的hotSize篇
+                    connection.zSetCommands().zRemRange(key, 0, -(hotSize + 1L));
+                    return null;
+                });
+                if (blogs.size() < FEED_PUSH_BATCH_SIZE) {
+                    break;
+                }
+                lastId = blogs.get(blogs.size() - 1).getId();
+            }
+        } catch (Exception e) {
+            log.error("重建热度排行异常", e);
+        } finally {
+            if (locked) {
+                lock.unlock();
+            }
+        }
+    }
+
     private void queryBlogUser(Blog blog) {
         Long userId = blog.getUserId();
         User user = userService.getById(userId);
@@ -206,20 +802,105 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         blog.setIcon(user.getIcon());
     }
 
-    private void isBlogLiked(Blog blog) {
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 1.收集作者id，去重
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toCollection(LinkedHashSet::new));
+        // 2.批量查询用户（一次MGET，未命中的一次IN查询）
+        Map<Long, UserDTO> users = queryUserMap(userIds);
+        // 3.填充作者信息
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
+    private Map<Long, UserDTO> queryUserMap(Collection<Long> userIds) {
+        return cacheClient.queryBatch(
+                CACHE_USER_KEY, userIds, UserDTO.class,
+                ids -> userService.listByIds(ids).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 用Redis中的点赞数覆盖数据库（或缓存）中的点赞数，数据库只有定时写回的值。
+     * 未加载到Redis的笔记用数据库的值加上未写回的增量初始化，读取增量和写入在like_init.lua中原子执行
+     */
+    private void queryLikeCounts(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 1.HMGET blog:likecount id1 id2 ...
+        List<Object> fields = blogs.stream().map(blog -> blog.getId().toString()).collect(Collectors.toList());
+        List<Object> counts = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKE_COUNT_KEY, fields);
+        List<Blog> missing = new ArrayList<>();
+        for (int i = 0; i < blogs.size(); i++) {
+            Object count = counts.get(i);
+            if (count == null) {
+                missing.add(blogs.get(i));
+            } else {
+                blogs.get(i).setLiked(Integer.valueOf(count.toString()));
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        // 2.未加载的笔记：先读取写回代数，再读取数据库中的点赞数
+        String gen = stringRedisTemplate.opsForValue().get(BLOG_LIKE_FLUSH_GEN_KEY);
+        Map<Long, Integer> dbLiked = query().select("id", "liked")
+                .in("id", missing.stream().map(Blog::getId).collect(Collectors.toList())).list()
+                .stream().collect(Collectors.toMap(Blog::getId, Blog::getLiked));
+        // 3.加上增量和正在写回的快照后HSETNX，期间写回过数据库时只计算不保存，由之后的请求重新初始化
+        List<String> args = new ArrayList<>(missing.size() * 2 + 1);
+        args.add(gen == null ? "0" : gen);
+        for (Blog blog : missing) {
+            args.add(blog.getId().toString());
+            args.add(String.valueOf(dbLiked.getOrDefault(blog.getId(), 0)));
+        }
+        List<?> liked = stringRedisTemplate.execute(
+                LIKE_INIT_SCRIPT,
+                Arrays.asList(BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY, BLOG_LIKE_FLUSH_GEN_KEY),
+                args.toArray()
+        );
+        for (int i = 0; i < missing.size(); i++) {
+            missing.get(i).setLiked(Integer.valueOf(liked.get(i).toString()));
+        }
+    }
+
+    private void isBlogLiked(List<Blog> blogs) {
         // 1.获取登录用户
         UserDTO user = UserHolder.getUser();
-        if (user == null) {
+        if (user == null || blogs.isEmpty()) {
             // 用户未登录，无需查询是否点赞
             return;
         }
-        Long userId = user.getId();
-        // 2.判断当前登录用户是否已经点赞
-        String key = "blog:liked:" + blog.getId();
-//        Boolean isMember = stringRedisTemplate.opsForSet().isMember(key, userId.toString());
-//        blog.setIsLike(BooleanUtil.isTrue(isMember));
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score != null);
+        // 2.一次pipeline判断当前登录用户是否已经点赞
+        List<Long> blogIds = blogs.stream().map(Blog::getId).collect(Collectors.toList());
+        List<Boolean> liked = batchIsLiked(user.getId(), blogIds);
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(liked.get(i));
+        }
+    }
+
+    /**
+     * 查询用户是否点赞了这些笔记，一页笔记的ZSCORE放在一个pipeline中，只需一次往返
+     * @return 与blogIds顺序一致
+     */
+    private List<Boolean> batchIsLiked(Long userId, List<Long> blogIds) {
+        byte[] member = userId.toString().getBytes(StandardCharsets.UTF_8);
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long blogId : blogIds) {
+                connection.zSetCommands().zScore((BLOG_LIKED_KEY + blogId).getBytes(StandardCharsets.UTF_8), member);
+            }
+            return null;
+        });
+        return scores.stream().map(Objects::nonNull).collect(Collectors.toList());
     }
 
 }
@@ -1,11 +1,42 @@
 package com.hmdp.service.impl;
 
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillScripts;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_WARM_UP_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARDS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务实现类
@@ -14,7 +45,181 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2022-01-04
  */
+@Slf4j
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SeckillAdmission seckillAdmission;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 预热的执行间隔（秒）
+     */
+    @Value("${hmdp.seckill.warm-up.interval:60}")
+    private long warmUpInterval;
+
+    /**
+     * 预热即将在多少秒内开始的秒杀
+     */
+    @Value("${hmdp.seckill.warm-up.ahead:600}")
+    private long warmUpAhead;
+
+    //预热线程
+    private ScheduledExecutorService warmUpExecutor;
+
+    @PostConstruct
+    private void init() {
+        warmUpExecutor = Executors.newSingleThreadScheduledExecutor();
+        // 启动时预热所有未结束的秒杀，Redis数据丢失时据此重建库存
+        warmUpExecutor.execute(() -> warmUp((Long) null));
+        // 之后定时预热即将开始的秒杀
+        warmUpExecutor.scheduleWithFixedDelay(
+                () -> warmUp(warmUpAhead), warmUpInterval, warmUpInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        warmUpExecutor.shutdownNow();
+    }
+
+    @Override
+    public void saveSeckillToRedis(SeckillVoucher seckillVoucher) {
+        saveSeckillToRedis(seckillVoucher, true);
+    }
+
+    /**
+     * @param overwrite 为false时只写入不存在的库存key（SETNX），不会覆盖已经开始扣减的库存
+     */
+    private void saveSeckillToRedis(SeckillVoucher seckillVoucher, boolean overwrite) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        int stock = seckillVoucher.getStock();
+        int shards = shardsOf(seckillVoucher);
+        if (shards <= 1) {
+            saveStock(SECKILL_STOCK_KEY + voucherId, stock, overwrite);
+        } else {
+            // 分片库存：seckill:stock:{voucherId:shard}，hash tag让每个分片的库存和下单用户落在同一个slot，不同分片可以分布在集群的不同节点
+            for (int shard = 0; shard < shards; shard++) {
+                // 余数分给前面的分片
+                int shardStock = stock / shards + (shard < stock % shards ? 1 : 0);
+                saveStock(SECKILL_STOCK_KEY + SeckillScripts.shardTag(voucherId, shard), shardStock, overwrite);
+            }
+        }
+        saveTimeWindow(seckillVoucher, shards);
+        if (shards > 1) {
+            // 最后写入分片数，下单时据此选择分片
+            stringRedisTemplate.opsForValue().set(SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        }
+        // 通知各节点重新读取分片数
+        seckillAdmission.stockChanged(voucherId);
+    }
+
+    /**
+     * 预热秒杀：加载Lua脚本、写入时间窗口，Redis中没有库存时按数据库重建
+     * @param aheadSeconds 只预热多少秒内开始的秒杀，为null时预热所有未结束的秒杀
+     */
+    private void warmUp(Long aheadSeconds) {
+        try {
+            preloadScript(SeckillScripts.SECKILL_SCRIPT);
+            preloadScript(SeckillScripts.SECKILL_SHARD_SCRIPT);
+            LocalDateTime now = LocalDateTime.now();
+            List<SeckillVoucher> vouchers = query()
+                    .gt("end_time", now)
+                    .le(aheadSeconds != null, "begin_time", now.plusSeconds(aheadSeconds == null ? 0 : aheadSeconds))
+                    .list();
+            for (SeckillVoucher voucher : vouchers) {
+                warmUp(voucher);
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会停止
+            log.error("秒杀预热异常", e);
+        }
+    }
+
+    private void warmUp(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        // 分片数以数据库为准，Redis数据丢失后也能按原来的分片重建
+        int shards = shardsOf(voucher);
+        saveTimeWindow(voucher, shards);
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(firstStockKey(voucherId, shards)))) {
+            return;
+        }
+        // 多个节点同时预热时只有一个重建
+        RLock lock = redissonClient.getLock(LOCK_SECKILL_WARM_UP_KEY + voucherId);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock();
+            if (!locked || Boolean.TRUE.equals(stringRedisTemplate.hasKey(firstStockKey(voucherId, shards)))) {
+                return;
+            }
+            // Redis中没有库存（如Redis数据丢失），未落库的订单消息也随之丢失，数据库中的库存和订单就是最新的
+            log.warn("Redis中没有秒杀库存，按数据库重建，voucherId:{}", voucherId);
+            List<VoucherOrder> orders = voucherOrderService.query()
+                    .select("user_id").eq("voucher_id", voucherId).list();
+            for (VoucherOrder order : orders) {
+                String orderKey = shards > 1
+                        ? SECKILL_ORDER_KEY + SeckillScripts.shardTag(voucherId, SeckillScripts.homeShard(order.getUserId(), shards))
+                        : SECKILL_ORDER_KEY + voucherId;
+                stringRedisTemplate.opsForSet().add(orderKey, order.getUserId().toString());
+            }
+            // 库存用SETNX写入，已经存在的库存（其他途径写入后开始扣减）不会被覆盖
+            saveSeckillToRedis(voucher, false);
+        } finally {
+            if (locked) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void saveStock(String key, int stock, boolean overwrite) {
+        if (overwrite) {
+            stringRedisTemplate.opsForValue().set(key, String.valueOf(stock));
+        } else {
+            stringRedisTemplate.opsForValue().setIfAbsent(key, String.valueOf(stock));
+        }
+    }
+
+    private static String firstStockKey(Long voucherId, int shards) {
+        return shards > 1 ? SECKILL_STOCK_KEY + SeckillScripts.shardTag(voucherId, 0) : SECKILL_STOCK_KEY + voucherId;
+    }
+
+    private static int shardsOf(SeckillVoucher voucher) {
+        Integer shards = voucher.getStockShards();
+        return shards == null || shards < 1 ? 1 : shards;
+    }
+
+    private void saveTimeWindow(SeckillVoucher voucher, int shards) {
+        Map<String, String> window = new HashMap<>(2);
+        window.put("begin", String.valueOf(toEpochMilli(voucher.getBeginTime())));
+        window.put("end", String.valueOf(toEpochMilli(voucher.getEndTime())));
+        if (shards <= 1) {
+            stringRedisTemplate.opsForHash().putAll(SECKILL_TIME_KEY + voucher.getVoucherId(), window);
+            return;
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            stringRedisTemplate.opsForHash().putAll(
+                    SECKILL_TIME_KEY + SeckillScripts.shardTag(voucher.getVoucherId(), shard), window);
+        }
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * SCRIPT LOAD，开抢时EVALSHA不会因为脚本缓存缺失而多一次往返
+     */
+    private void preloadScript(RedisScript<Long> script) {
+        byte[] body = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(body));
+    }
 }
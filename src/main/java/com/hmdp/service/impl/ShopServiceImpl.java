@@ -1,19 +1,25 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.GeoUtils;
+import com.hmdp.utils.LocalShopIndex;
 import com.hmdp.utils.RedisConstants;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.SingleFlight;
 import com.hmdp.utils.SystemConstants;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -22,21 +28,31 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CELL_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CELL_TTL;
+import static com.hmdp.utils.SystemConstants.GEO_CELL_MARGIN;
+import static com.hmdp.utils.SystemConstants.GEO_CELL_PRECISION;
+import static com.hmdp.utils.SystemConstants.GEO_MAX_RADIUS;
+import static com.hmdp.utils.SystemConstants.GEO_MAX_RESULTS;
+import static com.hmdp.utils.SystemConstants.GEO_MIN_RADIUS;
+import static com.hmdp.utils.SystemConstants.GEO_MIN_RESULTS;
 
 /**
  * <p>
  *  服务实现类
  * </p>
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
@@ -46,18 +62,30 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private LocalShopIndex localShopIndex;
+
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
     @Override
     public Result queryById(Long id) {
 
-        //利用主动更新和超时剔除解决缓存穿透问题
-        Shop shop = queryWithPassThrough(id);
+        //利用主动更新和超时剔除解决缓存穿透问题（本地缓存 + Redis两级缓存）
+        Shop shop = cacheClient.queryWithPassThrough(
+                RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
 
         //利用互斥锁解决缓存击穿问题
-//        Shop shop = queryWithMutex(id);
+//        Shop shop = cacheClient.queryWithMutex(
+//                RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
-        //利用逻辑过期策略解决缓存击穿问题
-//        Shop shop = queryWithLogicalExpire(id);
+        //利用逻辑过期策略解决缓存击穿问题（需要先用cacheClient.setWithLogicalExpire预热）
+//        Shop shop = cacheClient.queryWithLogicalExpire(
+//                RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         if (shop == null) {
             return Result.fail("店铺不存在！");
@@ -67,180 +95,99 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
-    //利用逻辑过期策略解决缓存击穿问题
-    public Shop queryWithLogicalExpire(Long id){
-        //从redis查询商铺缓存
-        String key = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        if (StrUtil.isBlank(shopJson)) {
-            //redis存在，则直接返回
-//            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-//            return Result.ok(shop);
-            return null; //理论上热点key会一直存在，此时为了程序的健壮性考虑，此处进行判断并返回空值
-        }
-        //命中,需要把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        Shop shop = JSONUtil.toBean(data, Shop.class);
-
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            //未过期，则直接直接返回店铺信息
-            return shop;
+    //进程内请求合并，热点key失效时同一节点只查询一次数据库
+    private final SingleFlight singleFlight = new SingleFlight(TimeUnit.SECONDS.toMillis(RedisConstants.LOCK_SHOP_TTL));
+
+    @Override
+    @Transactional
+    public Result update(Shop shop) {
+        Long id = shop.getId();
+        if (id == null) {
+            return Result.fail("店铺id不能为空");
         }
-        //已过期，则需缓存重建，并获取互斥锁
-        String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //成功获取锁，则开启独立线程，实现缓存重建
-        if(isLock){
-            CACHE_REBUILD_EXECUTOR.submit(()->{
-                try {
-                    //重建缓存
-                    this.saveShop2Redis(id,1800L); //有效期为30min
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //释放锁
-                    unLock(lockKey);
-                }
-            });
+        Shop before = getById(id);
+        if (before == null) {
+            return Result.fail("店铺不存在！");
         }
-        //锁获取失败，则返回商铺信息(过期)
-        return shop;
+        //redis主动更新策略
+        //更新数据库
+        updateById(shop);
+        Shop after = getById(id);
+        //事务提交后再删除缓存和通知，避免其他请求或节点在提交前读到旧数据重新写入缓存
+        afterCommit(() -> {
+            //删除缓存，并广播通知各节点删除本地缓存
+            cacheClient.invalidate(RedisConstants.CACHE_SHOP_KEY + id);
+            //通知各节点更新本地索引
+            stringRedisTemplate.convertAndSend(SHOP_CHANGED_CHANNEL, id.toString());
+            //更新GEO索引，类型变化时从旧类型的索引移到新类型的索引
+            updateGeoIndex(id, () -> shopGeoIndex.update(before, after));
+        });
+        return Result.ok();
     }
 
-    //利用互斥锁解决缓存击穿问题
-    public Shop queryWithMutex(Long id){
-        //从redis查询商铺缓存
-        String key = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        if (StrUtil.isNotBlank(shopJson)) {
-            //redis存在，则直接返回
-//            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-//            return Result.ok(shop);
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        //判断命中的是否是空值(不是null就是空字符串)
-        if (shopJson != null) {
-            //是空值，返回错误信息
-//            return Result.fail("店铺不存在");
-            return null;
-        }
-        //redis不存在，则查询数据库(缓存重建)
-        //获取互斥锁
-        String lockKey = "lock:shop:" + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            if (!isLock) {
-                //获取互斥锁失败，则休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(id);
-            }
-            //获取互斥锁成功，则查询数据库，写入redis，释放锁
-            shop = getById(id);
-//            Thread.sleep(200);//模拟缓存重建延迟时长
-            if (shop == null) {
-                //数据库不存在，将空值写入redis
-                stringRedisTemplate
-                        .opsForValue()
-                        .set(key,"",RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES); //2min
-                //数据库不存在，则返回错误
-                //            return Result.fail("店铺不存在！");
-                return null;
-            }
-            //数据库存在，则将数据存入redis，并设置有效期(redis超时剔除策略)
-            stringRedisTemplate
-                    .opsForValue()
-                    .set(key,JSONUtil.toJsonStr(shop),RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            unLock(lockKey); //释放锁
-        }
-        //返回结果
-//        return Result.ok(shop);
-        return shop;
+    @Override
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 写入GEO索引，通知各节点更新本地索引
+        afterCommit(() -> {
+            stringRedisTemplate.convertAndSend(SHOP_CHANGED_CHANNEL, shop.getId().toString());
+            updateGeoIndex(shop.getId(), () -> shopGeoIndex.add(shop));
+        });
+        // 返回店铺id
+        return Result.ok(shop.getId());
     }
 
-    //利用主动更新和超时剔除解决缓存穿透问题
-    public Shop queryWithPassThrough(Long id){
-        //从redis查询商铺缓存
-        String key = RedisConstants.CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        if (StrUtil.isNotBlank(shopJson)) {
-            //redis存在，则直接返回
-//            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-//            return Result.ok(shop);
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        //判断命中的是否是空值(不是null就是空值)
-        if (shopJson != null) {
-            //是空字符串，返回错误信息
-//            return Result.fail("店铺不存在");
-            return null;
-        }
-        //redis不存在，则查询数据库
+    @Override
+    public Result deleteShop(Long id) {
         Shop shop = getById(id);
         if (shop == null) {
-            //数据库不存在，将空值写入redis
-            stringRedisTemplate
-                    .opsForValue()
-                    .set(key,"",RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES); //2min
-            //数据库不存在，则返回错误
-//            return Result.fail("店铺不存在！");
-            return null;
+            return Result.fail("店铺不存在！");
         }
-        //数据库存在，则将数据存入redis，并设置有效期(redis超时剔除策略)
-        stringRedisTemplate
-                .opsForValue()
-                .set(key,JSONUtil.toJsonStr(shop),RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);//30min
-        //返回结果
-//        return Result.ok(shop);
-        return shop;
+        // 删除数据库、缓存和GEO索引
+        removeById(id);
+        afterCommit(() -> {
+            cacheClient.invalidate(RedisConstants.CACHE_SHOP_KEY + id);
+            stringRedisTemplate.convertAndSend(SHOP_CHANGED_CHANNEL, id.toString());
+            updateGeoIndex(id, () -> shopGeoIndex.remove(shop));
+        });
+        return Result.ok();
     }
 
-    //获取锁
-    private boolean tryLock(String key){
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        //避免出现空指针异常
-        return BooleanUtil.isTrue(flag);
-    }
-    //释放锁
-    private void unLock(String key){
-        stringRedisTemplate.delete(key);
+    /**
+     * 数据库已经提交，GEO索引写入失败只记录日志，由全量重建修复，不能让接口返回失败
+     */
+    private static void updateGeoIndex(Long shopId, Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.error("更新商铺GEO索引失败，shopId：{}", shopId, e);
+        }
     }
 
-    //模拟热点数据预热(缓存重建)
-    public void saveShop2Redis(Long id,Long expireSeconds) throws InterruptedException {
-        //查询店铺数据
-        Shop shop = getById(id);
-//        Thread.sleep(200);//此处增加缓存重建延迟，模拟线程安全问题
-        //封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //写入redis
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY+id,JSONUtil.toJsonStr(redisData));
+    /**
+     * 在当前事务提交后执行，没有事务时立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
-
     @Override
-    @Transactional
-    public Result update(Shop shop) {
-        Long id = shop.getId();
-        if (id == null) {
-            return Result.fail("店铺id不能为空");
+    public Result rebuildGeoIndex() {
+        long total = shopGeoIndex.rebuild();
+        if (total < 0) {
+            return Result.fail("GEO索引正在重建！");
         }
-        //redis主动更新策略
-        //更新数据库
-        updateById(shop);
-        //删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + id);
-        return Result.ok();
+        return Result.ok(total);
     }
 
     @Override
@@ -250,7 +197,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             // 不需要坐标查询，按数据库查询
             Page<Shop> page = query()
                     .eq("type_id", typeId)
-                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false));
             // 返回数据
             return Result.ok(page.getRecords());
         }
@@ -259,42 +206,325 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
         int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
 
-        // 3.查询redis、按照距离排序、分页。结果：shopId、distance
-        String key = SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo() // GEOSEARCH key BYLONLAT x y BYRADIUS 10 WITHDISTANCE
-                .search(
-                        key,
-                        GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
-                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
-                );
-        // 4.解析出id
-        if (results == null) {
-            return Result.ok(Collections.emptyList());
+        // 3.本地索引可用时，查询、计算距离和详情都在本地完成
+        if (localShopIndex.isReady()) {
+            return Result.ok(localShopIndex.nearby(typeId.longValue(), x, y, from, end));
         }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from) {
+
+        // 4.查询附近的商铺，已按距离排序
+        List<NearbyShop> nearby = queryNearby(typeId, x, y, null, null, null);
+        if (nearby.size() <= from) {
             // 没有下一页了，结束
             return Result.ok(Collections.emptyList());
         }
-        // 4.1.截取 from ~ end的部分
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result -> {
-            // 4.2.获取店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 4.3.获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // 5.根据id查询Shop
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
-        for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+        // 5.截取 from ~ end的部分，查询商铺详情
+        return Result.ok(queryGeoShops(nearby.subList(from, Math.min(end, nearby.size()))));
+    }
+
+    @Override
+    public Result queryShopNearby(Integer typeId, Double x, Double y, String cursor,
+                                  Long minPrice, Long maxPrice, Integer minScore) {
+        ScrollCursor.Position position;
+        try {
+            position = ScrollCursor.decodePosition(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标！");
         }
-        // 6.返回
-        return Result.ok(shops);
+        // 1.查询附近满足条件的商铺，已按(距离, id)排序
+        List<NearbyShop> nearby = queryNearby(typeId, x, y, minPrice, maxPrice, minScore);
+        // 2.从游标之后取一页，多取一条判断是否还有下一页
+        List<NearbyShop> page = new ArrayList<>(SystemConstants.DEFAULT_PAGE_SIZE + 1);
+        for (NearbyShop shop : nearby) {
+            if (position != null && !position.isBefore(shop.distance, shop.id)) {
+                continue;
+            }
+            page.add(shop);
+            if (page.size() > SystemConstants.DEFAULT_PAGE_SIZE) {
+                break;
+            }
+        }
+        CursorResult r = new CursorResult();
+        if (page.size() > SystemConstants.DEFAULT_PAGE_SIZE) {
+            page = page.subList(0, SystemConstants.DEFAULT_PAGE_SIZE);
+            NearbyShop last = page.get(page.size() - 1);
+            r.setCursor(ScrollCursor.encode(last.distance, last.id));
+        }
+        // 3.只查询当前页商铺的详情
+        r.setList(queryGeoShops(page));
+        return Result.ok(r);
+    }
+
+    /**
+     * 查询坐标附近的商铺：候选集按(类型, 坐标所在网格)缓存，每次请求只在候选集上计算距离、过滤、排序，
+     * 翻页不再重复执行GEOSEARCH，每页的代价与页码无关。
+     * 候选集经CacheClient读取（本地缓存 + CacheCodec），是共享的对象，只读不修改
+     * @return 按(距离, id)排序
+     */
+    private List<NearbyShop> queryNearby(Integer typeId, Double x, Double y, Long minPrice, Long maxPrice, Integer minScore) {
+        // 1.坐标所在网格的候选集
+        long cellX = (long) Math.floor(x * GEO_CELL_PRECISION);
+        long cellY = (long) Math.floor(y * GEO_CELL_PRECISION);
+        String cellId = typeId + ":" + cellX + ":" + cellY;
+        // 未命中时同一节点只构建一次
+        GeoCell cell = cacheClient.queryWithPassThrough(
+                SHOP_GEO_CELL_KEY, cellId, GeoCell.class,
+                id -> singleFlight.execute(SHOP_GEO_CELL_KEY + id, () -> loadGeoCell(typeId, cellX, cellY)),
+                SHOP_GEO_CELL_TTL, TimeUnit.SECONDS);
+        // 2.在数据中过滤价格、评分和半径，计算到当前坐标的距离
+        List<NearbyShop> nearby = new ArrayList<>();
+        for (GeoShop candidate : cell.getShops()) {
+            if (minPrice != null && (candidate.getAvgPrice() == null || candidate.getAvgPrice() < minPrice)) {
+                continue;
+            }
+            if (maxPrice != null && (candidate.getAvgPrice() == null || candidate.getAvgPrice() > maxPrice)) {
+                continue;
+            }
+            if (minScore != null && (candidate.getScore() == null || candidate.getScore() < minScore)) {
+                continue;
+            }
+            double distance = GeoUtils.distance(x, y, candidate.getX(), candidate.getY());
+            if (distance > cell.getRadius()) {
+                continue;
+            }
+            nearby.add(new NearbyShop(candidate.getId(), distance));
+        }
+        // 3.按(距离, id)排序
+        nearby.sort((a, b) -> a.distance != b.distance
+                ? Double.compare(a.distance, b.distance) : Long.compare(a.id, b.id));
+        return nearby;
+    }
+
+    /**
+     * 缓存未命中时构建网格的候选集，由CacheClient写入缓存
+     */
+    private GeoCell loadGeoCell(Integer typeId, long cellX, long cellY) {
+        // 1.以网格中心搜索，半径加上网格的半对角线，覆盖网格内任意坐标的搜索范围
+        // 结果太少时扩大半径 GEOSEARCH key FROMLONLAT x y BYRADIUS r m ASC COUNT n WITHCOORD WITHDIST
+        double centerX = (cellX + 0.5) / GEO_CELL_PRECISION;
+        double centerY = (cellY + 0.5) / GEO_CELL_PRECISION;
+        int radius = GEO_MIN_RADIUS;
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> found;
+        while (true) {
+            GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                    ShopGeoIndex.key(typeId.longValue()),
+                    GeoReference.fromCoordinate(centerX, centerY),
+                    new Distance(radius + GEO_CELL_MARGIN),
+                    RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs()
+                            .includeCoordinates().includeDistance().sortAscending().limit(GEO_MAX_RESULTS)
+            );
+            found = results == null ? Collections.emptyList() : results.getContent();
+            if (found.size() >= GEO_MIN_RESULTS || radius >= GEO_MAX_RADIUS) {
+                break;
+            }
+            radius = Math.min(radius * 2, GEO_MAX_RADIUS);
+        }
+        GeoCell cell = new GeoCell();
+        cell.setRadius(radius);
+        if (found.size() >= GEO_MAX_RESULTS) {
+            // 结果被截断时，只有最远结果以内的范围是完整的
+            double covered = found.get(found.size() - 1).getDistance().getValue() - GEO_CELL_MARGIN;
+            cell.setRadius(Math.max(Math.min(radius, covered), 0));
+        }
+        // 2.一次IN查询过滤需要的属性 select id, avg_price, score from tb_shop where id in (...)
+        List<GeoShop> shops = new ArrayList<>(found.size());
+        if (!found.isEmpty()) {
+            List<Long> ids = found.stream()
+                    .map(result -> Long.valueOf(result.getContent().getName()))
+                    .collect(Collectors.toList());
+            Map<Long, Shop> attributes = query().select("id", "avg_price", "score").in("id", ids).list()
+                    .stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : found) {
+                Shop attribute = attributes.get(Long.valueOf(result.getContent().getName()));
+                if (attribute == null) {
+                    // 已删除的商铺
+                    continue;
+                }
+                GeoShop shop = new GeoShop();
+                shop.setId(attribute.getId());
+                shop.setX(result.getContent().getPoint().getX());
+                shop.setY(result.getContent().getPoint().getY());
+                shop.setAvgPrice(attribute.getAvgPrice());
+                shop.setScore(attribute.getScore());
+                shops.add(shop);
+            }
+        }
+        cell.setShops(shops);
+        return cell;
+    }
+
+    /**
+     * 根据id批量查询Shop（一次MGET，未命中的一次IN查询），按传入的顺序排列并设置距离
+     */
+    private List<Shop> queryGeoShops(List<NearbyShop> page) {
+        if (page.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = page.stream().map(shop -> shop.id).collect(Collectors.toList());
+        Map<Long, Shop> shopMap = cacheClient.queryBatch(
+                RedisConstants.CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap,
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> shops = new ArrayList<>(page.size());
+        for (NearbyShop nearby : page) {
+            Shop cached = shopMap.get(nearby.id);
+            if (cached == null) {
+                continue;
+            }
+            // 缓存中的对象是共享的，只复制当前页，再设置距离
+            Shop shop = BeanUtil.copyProperties(cached, Shop.class);
+            shop.setDistance(nearby.distance);
+            shops.add(shop);
+        }
+        return shops;
+    }
+
+    /**
+     * 网格的候选集：搜索半径和范围内的商铺
+     */
+    @Data
+    public static class GeoCell {
+        /**
+         * 网格内任意坐标在该半径内的商铺都在候选集中
+         */
+        private double radius;
+        private List<GeoShop> shops;
+    }
+
+    /**
+     * 候选商铺，只包含排序和过滤需要的字段
+     */
+    @Data
+    public static class GeoShop {
+        private Long id;
+        private double x;
+        private double y;
+        private Long avgPrice;
+        private Integer score;
+    }
+
+    /**
+     * 过滤后的候选商铺和到当前坐标的距离
+     */
+    private static class NearbyShop {
+        private final long id;
+        private final double distance;
+
+        private NearbyShop(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    @Override
+    public Result queryShopByType(Integer typeId, String cursor) {
+        Long lastId;
+        try {
+            lastId = ScrollCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标！");
+        }
+        // select * from tb_shop where type_id = ? and id > ? order by id limit ?，走(type_id, id)索引
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .gt(lastId != null, "id", lastId)
+                .orderByAsc("id")
+                .last("limit " + (SystemConstants.DEFAULT_PAGE_SIZE + 1))
+                .list();
+        return Result.ok(ScrollCursor.of(shops, SystemConstants.DEFAULT_PAGE_SIZE, Shop::getId));
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        if (StrUtil.isNotBlank(name) && shopSearchIndex.isReady()) {
+            // 1.查询倒排索引，只保留到当前页的命中，已按相关度排序
+            List<ShopSearchIndex.Hit> hits = shopSearchIndex.search(name, null, current * SystemConstants.MAX_PAGE_SIZE);
+            int from = (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+            if (hits.size() <= from) {
+                return Result.ok(Collections.emptyList());
+            }
+            // 2.只查询当前页商铺的详情
+            List<ShopSearchIndex.Hit> page = hits.subList(from, Math.min(from + SystemConstants.MAX_PAGE_SIZE, hits.size()));
+            return Result.ok(queryShops(page.stream().map(ShopSearchIndex.Hit::getId).collect(Collectors.toList())));
+        }
+        // 索引不可用时按数据库查询
+        Page<Shop> page = query()
+                .like(StrUtil.isNotBlank(name), "name", name)
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
+        return Result.ok(page.getRecords());
+    }
+
+    @Override
+    public Result suggestShopName(String prefix) {
+        if (StrUtil.isBlank(prefix) || !shopSearchIndex.isReady()) {
+            return Result.ok(Collections.emptyList());
+        }
+        return Result.ok(shopSearchIndex.suggest(prefix, SystemConstants.SEARCH_SUGGEST_SIZE));
+    }
+
+    @Override
+    public Result queryShopByName(String name, String cursor) {
+        // 游标带有类型，翻页时沿用第一页的排序方式：相关度游标继续查询索引，主键游标继续查询数据库
+        boolean byRelevance = StrUtil.isNotBlank(name) && shopSearchIndex.isReady();
+        if (ScrollCursor.isPosition(cursor)) {
+            if (byRelevance) {
+                return searchShopByName(name, cursor);
+            }
+            // 索引不可用（未开启或还在加载），无法按相关度继续，从数据库的第一页开始
+            cursor = null;
+        } else if (byRelevance && StrUtil.isBlank(cursor)) {
+            return searchShopByName(name, null);
+        }
+        Long lastId;
+        try {
+            lastId = ScrollCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标！");
+        }
+        // select * from tb_shop where name like ? and id > ? order by id limit ?，沿主键扫描，不再跳过前面的页
+        List<Shop> shops = query()
+                .like(StrUtil.isNotBlank(name), "name", name)
+                .gt(lastId != null, "id", lastId)
+                .orderByAsc("id")
+                .last("limit " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        return Result.ok(ScrollCursor.of(shops, SystemConstants.MAX_PAGE_SIZE, Shop::getId));
+    }
+
+    /**
+     * 按相关度游标分页，游标为(-相关度, id)，升序即相关度从高到低
+     */
+    private Result searchShopByName(String name, String cursor) {
+        ScrollCursor.Position position;
+        try {
+            position = ScrollCursor.decodePosition(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标！");
+        }
+        // 1.从游标之后取一页，多取一条判断是否还有下一页
+        List<ShopSearchIndex.Hit> page = shopSearchIndex.search(name, position, SystemConstants.MAX_PAGE_SIZE + 1);
+        CursorResult r = new CursorResult();
+        if (page.size() > SystemConstants.MAX_PAGE_SIZE) {
+            page = page.subList(0, SystemConstants.MAX_PAGE_SIZE);
+            ShopSearchIndex.Hit last = page.get(page.size() - 1);
+            r.setCursor(ScrollCursor.encode(-last.getRelevance(), last.getId()));
+        }
+        // 2.只查询当前页商铺的详情
+        r.setList(queryShops(page.stream().map(ShopSearchIndex.Hit::getId).collect(Collectors.toList())));
+        return Result.ok(r);
+    }
+
+    /**
+     * 根据id批量查询Shop（一次MGET，未命中的一次IN查询），按ids的顺序排列
+     */
+    private List<Shop> queryShops(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(cacheClient.queryBatch(
+                RedisConstants.CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap,
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES).values());
+    }
+
+    private Map<Long, Shop> queryShopMap(Collection<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
     }
 }
@@ -1,11 +1,16 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.ReferenceDataCache;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +22,27 @@ import org.springframework.stereotype.Service;
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    private static final String SHOP_TYPE_TABLE = "shop-type";
+
+    @Resource
+    private ReferenceDataCache referenceDataCache;
+
+    private ReferenceDataCache.Table<ShopType> typeTable;
+
+    @PostConstruct
+    private void init() {
+        // select * from tb_shop_type order by sort
+        typeTable = referenceDataCache.register(SHOP_TYPE_TABLE, () -> query().orderByAsc("sort").list());
+    }
+
+    @Override
+    public ReferenceDataCache.Snapshot<ShopType> queryTypeList() {
+        return typeTable.get();
+    }
+
+    @Override
+    public Result refreshTypeList() {
+        // 修改tb_shop_type后调用，所有节点重新加载
+        return Result.ok(referenceDataCache.bump(SHOP_TYPE_TABLE));
+    }
 }
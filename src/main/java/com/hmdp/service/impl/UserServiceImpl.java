@@ -1,9 +1,8 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
-import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -13,6 +12,7 @@ import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SessionStore;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -24,9 +24,7 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
@@ -46,6 +44,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SessionStore sessionStore;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         //校验手机号
@@ -84,22 +85,32 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         if (user == null) {
             user = createUserWithPhone(phone);
         }
-        //随机生成token，作为登录令牌
-        String token = UUID.randomUUID().toString(true);
         //为防止信息泄露，此处需要对user进行处理，转成userDTO
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        //将userDTO转换成Map
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO,new HashMap<>(),
-                CopyOptions.create().setIgnoreNullValue(true).setFieldValueEditor(
-                        (fieldName,fieldValue)->fieldValue.toString()
-                ));
-        //保存用户信息
-        String tokenKey = RedisConstants.LOGIN_USER_KEY + token;
-        stringRedisTemplate.opsForHash().putAll(tokenKey,userMap);
-        //设置token有效期
-        stringRedisTemplate.expire(tokenKey,RedisConstants.LOGIN_USER_TTL,TimeUnit.MINUTES);
+        //创建会话：Redis中保存用户信息，或签发带有用户信息的token
 //        session.setAttribute("user", BeanUtil.copyProperties(user,UserDTO.class));
         //给前端返回token
+        return Result.ok(sessionStore.create(userDTO));
+    }
+
+    @Override
+    public Result logout(String token) {
+        if (StrUtil.isNotBlank(token)) {
+            //删除token，并通知所有节点删除本地缓存的会话
+            sessionStore.invalidate(token);
+        }
+        return Result.ok();
+    }
+
+    @Override
+    public Result refresh(String refreshToken) {
+        if (StrUtil.isBlank(refreshToken)) {
+            return Result.fail("refresh token不能为空");
+        }
+        String token = sessionStore.refresh(refreshToken);
+        if (token == null) {
+            return Result.fail("登录已过期，请重新登录");
+        }
         return Result.ok(token);
     }
 
@@ -3,31 +3,55 @@ package com.hmdp.service.impl;
 import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillScripts;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DLQ;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
+import static com.hmdp.utils.SeckillScripts.SECKILL_SCRIPT;
+import static com.hmdp.utils.SeckillScripts.SECKILL_SHARD_SCRIPT;
 
 /**
  * <p>
@@ -44,97 +68,252 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedisIdWorker redisIdWorker;
 
+    @Resource
+    private SeckillAdmission seckillAdmission;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private RedissonClient redissonClient;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-
+    //代理对象（事务），懒加载避免循环依赖，消费线程启动时即可使用
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
-    //提前读取Lua脚本
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    /**
+     * 订单消费者数量，每个消费者一个线程
+     */
+    @Value("${hmdp.seckill.order.consumers:4}")
+    private int orderConsumers;
+
+    /**
+     * 每次从Stream读取的订单数量
+     */
+    @Value("${hmdp.seckill.order.batch-size:100}")
+    private int orderBatchSize;
+
+    /**
+     * pending-list中的消息空闲超过该时间（秒）后，被回收线程认领重试
+     */
+    @Value("${hmdp.seckill.order.reclaim-idle:10}")
+    private long reclaimIdleSeconds;
+
+    /**
+     * 最大投递次数，超过后转入死信队列
+     */
+    @Value("${hmdp.seckill.order.max-deliveries:5}")
+    private long maxDeliveries;
 
     //异步处理线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private ExecutorService seckillOrderExecutor;
+
+    //pending-list回收线程
+    private ScheduledExecutorService orderReclaimExecutor;
 
     //在类初始化之后执行，因为当这个类初始化好了之后，随时都是有可能要执行的
     @PostConstruct
     private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        seckillOrderExecutor = Executors.newFixedThreadPool(orderConsumers);
+        // 消费者名称在节点和线程间唯一：c-pid@host-序号
+        String node = ManagementFactory.getRuntimeMXBean().getName();
+        for (int i = 0; i < orderConsumers; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler("c-" + node + "-" + i));
+        }
+        orderReclaimExecutor = Executors.newSingleThreadScheduledExecutor();
+        long interval = Math.max(1, reclaimIdleSeconds / 2);
+        orderReclaimExecutor.scheduleWithFixedDelay(
+                new PendingOrderReclaimer("reclaimer-" + node), interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        seckillOrderExecutor.shutdownNow();
+        orderReclaimExecutor.shutdownNow();
     }
 
     private class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
+        private final Consumer consumer;
+
+        private VoucherOrderHandler(String consumerName) {
+            this.consumer = Consumer.from(SECKILL_ORDER_GROUP, consumerName);
+        }
+
         @Override
         public void run() {
-            while (true) {
+            while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    //获取消息队列中的订单信息：XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS stream.orders >
+                    //获取消息队列中的订单信息：XREADGROUP GROUP g1 consumer COUNT batchSize BLOCK 2000 STREAMS stream.orders >
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
+                            consumer,
+                            StreamReadOptions.empty().count(orderBatchSize).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed())
                     );
                     //判断消息获取是否成功
                     if (list == null || list.isEmpty()) {
                         //如果获取失败，说明没有消息，继续下一次循环
                         continue;
                     }
-                    //解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    //下单
-                    handleVoucherOrder(voucherOrder);
-                    //ACK确认：SACK stream.orders g1 c1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                    //批量下单并确认
+                    handleRecords(list);
                 } catch (Exception e) {
+                    //失败的消息留在pending-list中，由PendingOrderReclaimer认领重试
                     log.error("处理订单异常", e);
-                    //处理异常消息
-                    handlePendingList();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
             }
         }
+    }
+
+    /**
+     * 定时扫描整个消费者组的pending-list，认领空闲超时的消息（包括已宕机节点的消息）：
+     * 投递次数未超限的重新下单，超限的转入死信队列
+     */
+    private class PendingOrderReclaimer implements Runnable {
+        private final String consumerName;
+
+        private PendingOrderReclaimer(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            try {
+                reclaim();
+            } catch (Exception e) {
+                // 异常不能抛出，否则定时任务会停止
+                log.error("回收pending-list订单异常", e);
+            }
+        }
 
-        private void handlePendingList() {
+        private void reclaim() {
+            Duration idle = Duration.ofSeconds(reclaimIdleSeconds);
+            // 按id分页遍历整个pending-list，前面的消息还在处理中时，后面空闲的消息也能被回收
+            Range<String> range = Range.unbounded();
             while (true) {
-                try {
-                    //获取pending-list中的订单信息：XREADGROUP GROUP g1 c1 COUNT 1 STREAMS stream.orders 0
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
-                    );
-                    //判断消息获取是否为空
-                    if (list == null || list.isEmpty()) {
-                        //如果获取失败，说明pending-list中没有异常消息，结束循环
-                        break;
+                //XPENDING stream.orders g1 start + batchSize
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, range, orderBatchSize);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                List<RecordId> retryIds = new ArrayList<>();
+                List<RecordId> deadIds = new ArrayList<>();
+                for (PendingMessage message : pending) {
+                    if (message.getElapsedTimeSinceLastDelivery().compareTo(idle) < 0) {
+                        continue;
                     }
-                    //解析数据
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    //下单
-                    handleVoucherOrder(voucherOrder);
-                    //ACK确认：SACK stream.orders g1 c1 id
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理pending-list订单异常", e);
+                    if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                        deadIds.add(message.getId());
+                    } else {
+                        retryIds.add(message.getId());
+                    }
+                }
+                if (!deadIds.isEmpty()) {
+                    moveToDeadLetter(claim(deadIds, idle));
+                }
+                if (!retryIds.isEmpty()) {
+                    retry(claim(retryIds, idle));
+                }
+                if (pending.size() < orderBatchSize) {
+                    return;
+                }
+                // 下一页从本页最后一条之后开始
+                RecordId last = pending.get(pending.size() - 1).getId();
+                range = Range.rightUnbounded(Range.Bound.inclusive(
+                        RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+            }
+        }
+
+        /**
+         * XCLAIM带最小空闲时间，多个节点同时回收时只有一个能认领成功
+         */
+        private List<MapRecord<String, Object, Object>> claim(List<RecordId> ids, Duration idle) {
+            List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xClaim(SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8),
+                            SECKILL_ORDER_GROUP, consumerName, idle, ids.toArray(new RecordId[0])));
+            if (records == null) {
+                return Collections.emptyList();
+            }
+            return records.stream().map(stringRedisTemplate.opsForStream()::deserializeRecord).collect(Collectors.toList());
+        }
+
+        private void retry(List<MapRecord<String, Object, Object>> records) {
+            if (records.isEmpty()) {
+                return;
+            }
+            try {
+                handleRecords(records);
+            } catch (Exception e) {
+                //整批失败时逐条重试，避免一条异常消息拖住整批
+                for (MapRecord<String, Object, Object> record : records) {
                     try {
-                        Thread.sleep(20);
-                    } catch (InterruptedException ex) {
-                        throw new RuntimeException(ex);
+                        handleRecords(Collections.singletonList(record));
+                    } catch (Exception ex) {
+                        log.error("重试订单失败，id:{}", record.getId(), ex);
                     }
                 }
             }
         }
+
+        private void moveToDeadLetter(List<MapRecord<String, Object, Object>> records) {
+            for (MapRecord<String, Object, Object> record : records) {
+                Map<Object, Object> value = new HashMap<>(record.getValue());
+                value.put("sourceId", record.getId().getValue());
+                //XADD stream.orders.dlq * ... 后再XACK，保证消息不会丢失
+                stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DLQ, value);
+                stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, record.getId());
+                log.error("订单超过最大投递次数，转入死信队列，id:{}，订单:{}", record.getId(), record.getValue());
+            }
+        }
+    }
+
+    private void handleRecords(List<MapRecord<String, Object, Object>> list) {
+        //解析消息中的订单信息
+        List<VoucherOrder> voucherOrders = new ArrayList<>(list.size());
+        RecordId[] recordIds = new RecordId[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            MapRecord<String, Object, Object> record = list.get(i);
+            voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            recordIds[i] = record.getId();
+        }
+        //一个事务内批量下单
+        proxy.createVoucherOrders(voucherOrders);
+        //批量ACK确认：XACK stream.orders g1 id1 id2 ...
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, recordIds);
+    }
+
+    @Override
+    public Result queryDeadOrders(Integer count) {
+        //XRANGE stream.orders.dlq - + COUNT count
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(SECKILL_ORDER_DLQ, Range.unbounded(), RedisZSetCommands.Limit.limit().count(count));
+        List<Map<Object, Object>> orders = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> value = new HashMap<>(record.getValue());
+            value.put("dlqId", record.getId().getValue());
+            orders.add(value);
+        }
+        return Result.ok(orders);
+    }
+
+    @Override
+    public Result replayDeadOrders(Integer count) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(SECKILL_ORDER_DLQ, Range.unbounded(), RedisZSetCommands.Limit.limit().count(count));
+        for (MapRecord<String, Object, Object> record : records) {
+            //重新投递到stream.orders，已落库的订单会在createVoucherOrders中被过滤
+            Map<Object, Object> value = new HashMap<>(record.getValue());
+            value.remove("sourceId");
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM, value);
+            stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_DLQ, record.getId());
+        }
+        return Result.ok(records.size());
     }
 
    /* //阻塞队列：当线程尝试从阻塞队列获取元素，如果没有元素，那么线程会被阻塞，直到队列中有元素，线程才会被唤醒
@@ -157,34 +336,29 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
     }*/
 
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        //1.获取用户
-        Long userId = voucherOrder.getUserId();//此处不能从localThread中获取，因为此处不是主线程执行的
-        // 2.创建锁对象
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        // 3.尝试获取锁（此处理论上不需要用锁）
-        boolean isLock = lock.tryLock();
-        // 4.判断是否获得锁成功
-        if (!isLock) {
-            // 获取锁失败，直接返回失败或者重试
-            log.error("不允许重复下单！");
-            return;
-        }
-        try {
-            //注意：由于是spring的事务是放在threadLocal中，此时的是多线程，事务会失效
-            proxy.createVoucherOrder(voucherOrder);
-        } finally {
-            // 释放锁
-            lock.unlock();
-        }
-    }
-
     //使用Lua脚本确保操作原子性，并利用Stream消息队列进行异步操作下单，从而减少耗时，确保数据安全
     //创建消费者组：xgroup create stream.orders g1 0 mkstream（在redis客户端中使用命令行模式执行）
     @Override
     public Result seckillVoucher(Long voucherId) {
+        //本地判断是否售罄，售罄后不再访问Redis
+        if (seckillAdmission.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        Integer shards = seckillAdmission.stockShards(voucherId);
+        if (shards == null) {
+            //Redis中没有库存：优惠券不存在或还没有预热
+            return Result.fail("秒杀尚未开始！");
+        }
+        //本地令牌过滤
+        if (!seckillAdmission.tryAcquire(voucherId, shards)) {
+            return Result.fail("库存不足");
+        }
         //获取用户
         Long userId = UserHolder.getUser().getId();
+        if (shards > 1) {
+            return seckillShardedVoucher(voucherId, userId, shards);
+        }
+        //通过本地准入后再生成订单id，Lua脚本中原子地发送订单消息
         long orderId = redisIdWorker.nextId("order");
         //执行lua脚本
         Long result = stringRedisTemplate.execute(
@@ -196,14 +370,88 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         //判断结果是否为0
         if (r != 0) {
             //不为0 ，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            return rejectSeckill(voucherId, r);
         }
-        //获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
         //返回订单id
         return Result.ok(orderId);
     }
 
+    private Result rejectSeckill(Long voucherId, int r) {
+        if (r == 1) {
+            //库存不足，通知所有节点
+            seckillAdmission.markSoldOut(voucherId);
+            return Result.fail("库存不足");
+        }
+        //其他情况没有消耗库存，归还令牌
+        seckillAdmission.release(voucherId);
+        if (r == 3 || r == 5) {
+            //5-Redis中没有库存，还没有预热
+            return Result.fail("秒杀尚未开始！");
+        }
+        if (r == 4) {
+            return Result.fail("秒杀已经结束！");
+        }
+        return Result.fail("不能重复下单");
+    }
+
+    /**
+     * 分片库存下单：用户按hash固定属于一个home分片，在home分片上原子地判重、占位并扣库存；
+     * home分片库存不足时依次尝试兄弟分片，全部不足则释放占位。每次脚本只访问一个分片的key，可以在集群中执行
+     */
+    private Result seckillShardedVoucher(Long voucherId, Long userId, int shards) {
+        //先生成订单id，生成失败时还没有占位和扣库存
+        long orderId = redisIdWorker.nextId("order");
+        int home = SeckillScripts.homeShard(userId, shards);
+        int r = executeShardScript(voucherId, home, userId, "home");
+        if (r != 0 && r != 1) {
+            //重复下单或不在秒杀时间内，home分片没有占位
+            return rejectSeckill(voucherId, r);
+        }
+        int shard = home;
+        for (int i = 1; r == 1 && i < shards; i++) {
+            shard = (home + i) % shards;
+            r = executeShardScript(voucherId, shard, userId, "sibling");
+        }
+        if (r != 0) {
+            executeShardScript(voucherId, home, userId, "release");
+            return rejectSeckill(voucherId, r);
+        }
+        //stream.orders与分片不在同一个slot，资格判断通过后再发送消息：XADD stream.orders * userId voucherId id
+        Map<String, String> order = new HashMap<>(4);
+        order.put("userId", userId.toString());
+        order.put("voucherId", voucherId.toString());
+        order.put("id", String.valueOf(orderId));
+        try {
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM, order);
+        } catch (Exception e) {
+            //发送失败时归还扣减库存的分片并释放home分片的占位，否则库存泄漏且用户无法再次下单
+            log.error("发送秒杀订单消息失败，归还库存，voucherId:{}，userId:{}", voucherId, userId, e);
+            compensateShardedSeckill(voucherId, userId, home, shard);
+            return Result.fail("下单失败，请重试");
+        }
+        return Result.ok(orderId);
+    }
+
+    private void compensateShardedSeckill(Long voucherId, Long userId, int home, int shard) {
+        try {
+            executeShardScript(voucherId, shard, userId, "refund");
+            executeShardScript(voucherId, home, userId, "release");
+            seckillAdmission.release(voucherId);
+        } catch (Exception e) {
+            log.error("归还秒杀库存失败，voucherId:{}，userId:{}，shard:{}", voucherId, userId, shard, e);
+        }
+    }
+
+    private int executeShardScript(Long voucherId, int shard, Long userId, String op) {
+        String tag = SeckillScripts.shardTag(voucherId, shard);
+        Long result = stringRedisTemplate.execute(
+                SECKILL_SHARD_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + tag, SECKILL_ORDER_KEY + tag, SECKILL_TIME_KEY + tag),
+                userId.toString(), op
+        );
+        return result.intValue();
+    }
+
     //使用Lua脚本确保操作原子性，并利用jdk自带的阻塞队列进行异步操作下单，从而减少耗时
 /*    @Override
     public Result seckillVoucher(Long voucherId) {
@@ -313,6 +561,63 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         save(voucherOrder);
     }
 
+    /**
+     * 批量下单：批次内去重、一次查询过滤已有订单、每个优惠券一次聚合扣减库存、一次多行INSERT
+     */
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //1.批次内按用户和优惠券去重
+        Map<String, VoucherOrder> orderMap = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.putIfAbsent(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId(), voucherOrder);
+        }
+        //2.过滤已经落库的订单（pending-list中的消息可能已经处理过）
+        Set<Long> userIds = orderMap.values().stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = orderMap.values().stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        List<VoucherOrder> existing = query().select("user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list();
+        for (VoucherOrder order : existing) {
+            if (orderMap.remove(order.getUserId() + ":" + order.getVoucherId()) != null) {
+                log.error("用户已经购买过了，userId:{}，voucherId:{}", order.getUserId(), order.getVoucherId());
+            }
+        }
+        if (orderMap.isEmpty()) {
+            return;
+        }
+        //3.按优惠券聚合扣减库存
+        Map<Long, List<VoucherOrder>> voucherOrderMap = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> toSave = new ArrayList<>(orderMap.size());
+        for (Map.Entry<Long, List<VoucherOrder>> entry : voucherOrderMap.entrySet()) {
+            Long voucherId = entry.getKey();
+            List<VoucherOrder> orders = entry.getValue();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + orders.size()) // set stock = stock - n
+                    .eq("voucher_id", voucherId).ge("stock", orders.size()) // where id = ? and stock >= n
+                    .update();
+            if (!success) {
+                //Redis中已经扣过库存，正常不会走到这里；锁定库存行后按剩余库存下单
+                SeckillVoucher voucher = seckillVoucherService.query()
+                        .eq("voucher_id", voucherId).last("FOR UPDATE").one();
+                int stock = voucher == null ? 0 : Math.max(voucher.getStock(), 0);
+                log.error("库存不足，voucherId:{}，丢弃{}个订单", voucherId, orders.size() - stock);
+                if (stock == 0) {
+                    continue;
+                }
+                orders = orders.subList(0, stock);
+                seckillVoucherService.update()
+                        .setSql("stock = stock - " + stock)
+                        .eq("voucher_id", voucherId)
+                        .update();
+            }
+            toSave.addAll(orders);
+        }
+        //4.多行INSERT保存订单
+        if (!toSave.isEmpty()) {
+            getBaseMapper().insertBatch(toSave);
+        }
+    }
+
     /*@Transactional
     public Result createVoucherOrder(Long voucherId) {
         //一人一单逻辑，此处利用悲观锁（分布式锁）处理一人一单问题
@@ -7,15 +7,12 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.List;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
-
 /**
  * <p>
  *  服务实现类
@@ -30,9 +27,6 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
-    @Resource
-    private StringRedisTemplate stringRedisTemplate;
-
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -52,10 +46,10 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setStock(voucher.getStock());
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
+        Integer shards = voucher.getStockShards();
+        seckillVoucher.setStockShards(shards == null || shards < 1 ? 1 : shards);
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀库存到Redis中
-        //SECKILL_STOCK_KEY 这个变量定义在RedisConstans中
-        //private static final String SECKILL_STOCK_KEY ="seckill:stock:"
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 保存秒杀库存和秒杀时间到Redis中
+        seckillVoucherService.saveSeckillToRedis(seckillVoucher);
     }
 }
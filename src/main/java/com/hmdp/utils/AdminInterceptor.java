@@ -0,0 +1,47 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 拦截@AdminOnly的接口，需要在RefreshTokenInterceptor之后执行才能拿到当前用户
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminIds;
+
+    /**
+     * @param adminIds 管理员用户id，逗号分隔，为空时所有@AdminOnly接口都不可调用
+     */
+    public AdminInterceptor(String adminIds) {
+        this.adminIds = StrUtil.splitTrim(StrUtil.nullToEmpty(adminIds), ',').stream()
+                .map(Long::valueOf)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod) || !((HandlerMethod) handler).hasMethodAnnotation(AdminOnly.class)) {
+            return true;
+        }
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            //未登录  401-未登录
+            response.setStatus(401);
+            return false;
+        }
+        if (!adminIds.contains(user.getId())) {
+            //不是管理员  403-无权限
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+}
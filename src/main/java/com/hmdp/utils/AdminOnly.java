@@ -0,0 +1,19 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * 运维接口，只有hmdp.admin.user-ids中配置的用户可以调用，由AdminInterceptor判断。
+ * 与登录拦截的路径无关，路径被排除在登录拦截之外时同样生效
+ * </p>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AdminOnly {
+}
@@ -1,21 +1,35 @@
 package com.hmdp.utils;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
 import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_TTL;
+import static com.hmdp.utils.SystemConstants.LOCAL_CACHE_CAPACITY;
+import static com.hmdp.utils.SystemConstants.LOCAL_CACHE_TTL;
 
 @Slf4j
 @Component
@@ -23,14 +37,58 @@ public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 缓存数据的读写，value为cacheCodec序列化后的字节
+     */
+    private final RedisTemplate<String, byte[]> cacheRedisTemplate;
+
+    private final CacheCodec cacheCodec;
+
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    /**
+     * 本地一级缓存（L1），按容量LRU淘汰并带有过期时间，Redis作为二级缓存（L2）
+     */
+    private final LRUCache<String, Object> localCache = CacheUtil.newLRUCache(LOCAL_CACHE_CAPACITY, LOCAL_CACHE_TTL);
+
+    /**
+     * 本地缓存中的空值标记，对应Redis中的空字符串
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Redis中的空值标记
+     */
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 其他节点持有重建锁时的重试间隔（毫秒）
+     */
+    private static final long LOCK_RETRY_INTERVAL = 10L;
+
+    private final SingleFlight singleFlight = new SingleFlight(TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL));
+
+    // 各级缓存的命中统计
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder localMisses = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisTemplate<String, byte[]> cacheRedisTemplate,
+                       CacheCodec cacheCodec, RedisMessageListenerContainer listenerContainer) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheRedisTemplate = cacheRedisTemplate;
+        this.cacheCodec = cacheCodec;
+        // 订阅失效广播，其他节点更新数据后删除本节点的本地缓存
+        listenerContainer.addMessageListener(
+                (message, pattern) -> localCache.remove(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL)
+        );
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        cacheRedisTemplate.opsForValue().set(key, cacheCodec.encode(value), time, unit);
+        localCache.put(key, value);
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
@@ -39,31 +97,70 @@ public class CacheClient {
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        cacheRedisTemplate.opsForValue().set(key, cacheCodec.encode(redisData));
+        localCache.put(key, redisData);
+    }
+
+    /**
+     * 删除缓存，并通知所有节点删除本地缓存
+     * @param key 缓存key
+     */
+    public void invalidate(String key) {
+        cacheRedisTemplate.delete(key);
+        localCache.remove(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 获取各级缓存的命中统计
+     * @return 统计项 -> 次数
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>(8);
+        stats.put("localHits", localHits.sum());
+        stats.put("localMisses", localMisses.sum());
+        stats.put("redisHits", redisHits.sum());
+        stats.put("redisMisses", redisMisses.sum());
+        stats.put("localSize", (long) localCache.size());
+        return stats;
     }
 
     public <R,ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
         String key = keyPrefix + id;
+        // 0.先查本地缓存
+        Object local = localCache.get(key, false);
+        if (local != null) {
+            localHits.increment();
+            return local == NULL_VALUE ? null : type.cast(local);
+        }
+        localMisses.increment();
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = cacheRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(json)) {
+        if (bytes != null && bytes.length > 0) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(json, type);
+            redisHits.increment();
+            R r = cacheCodec.decode(bytes, type);
+            localCache.put(key, r);
+            return r;
         }
         // 判断命中的是否是空值
-        if (json != null) {
+        if (bytes != null) {
             // 返回一个错误信息
+            redisHits.increment();
+            localCache.put(key, NULL_VALUE);
             return null;
         }
+        redisMisses.increment();
 
         // 4.不存在，根据id查询数据库
         R r = dbFallback.apply(id);
         // 5.不存在，返回错误
         if (r == null) {
             // 将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            cacheRedisTemplate.opsForValue().set(key, EMPTY, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            localCache.put(key, NULL_VALUE);
             // 返回错误信息
             return null;
         }
@@ -72,23 +169,122 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 批量查询缓存：本地缓存 -> 一次MGET -> 一次数据库批量查询，未命中的数据通过pipeline批量写回Redis
+     * @param keyPrefix key前缀
+     * @param ids id集合
+     * @param type 数据类型
+     * @param dbFallback 批量查询数据库的函数，返回 id -> 数据，不存在的id不放入map中
+     * @return id -> 数据，按ids的顺序排列，不存在的数据不放入map中
+     */
+    public <R, ID> Map<ID, R> queryBatch(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return result;
+        }
+        // 1.先查本地缓存
+        List<ID> redisIds = new ArrayList<>(ids.size());
+        List<String> redisKeys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            String key = keyPrefix + id;
+            Object local = localCache.get(key, false);
+            if (local == null) {
+                localMisses.increment();
+                redisIds.add(id);
+                redisKeys.add(key);
+                continue;
+            }
+            localHits.increment();
+            if (local != NULL_VALUE) {
+                result.put(id, type.cast(local));
+            }
+        }
+        if (redisIds.isEmpty()) {
+            return sortByIds(ids, result);
+        }
+        // 2.一次MGET查询Redis
+        List<byte[]> values = cacheRedisTemplate.opsForValue().multiGet(redisKeys);
+        List<ID> dbIds = new ArrayList<>(redisIds.size());
+        for (int i = 0; i < redisIds.size(); i++) {
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes == null) {
+                redisMisses.increment();
+                dbIds.add(redisIds.get(i));
+                continue;
+            }
+            redisHits.increment();
+            R r = cacheLocally(redisKeys.get(i), bytes, type);
+            if (r != null) {
+                result.put(redisIds.get(i), r);
+            }
+        }
+        if (dbIds.isEmpty()) {
+            return sortByIds(ids, result);
+        }
+        // 3.未命中的数据一次性查询数据库
+        Map<ID, R> loaded = dbFallback.apply(dbIds);
+        long seconds = unit.toSeconds(time);
+        long nullSeconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        // 4.通过pipeline批量写回Redis，不存在的数据写入空值
+        cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : dbIds) {
+                String key = keyPrefix + id;
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                R r = loaded.get(id);
+                if (r == null) {
+                    connection.stringCommands().setEx(rawKey, nullSeconds, EMPTY);
+                    localCache.put(key, NULL_VALUE);
+                } else {
+                    connection.stringCommands().setEx(rawKey, seconds, cacheCodec.encode(r));
+                    localCache.put(key, r);
+                }
+            }
+            return null;
+        });
+        result.putAll(loaded);
+        return sortByIds(ids, result);
+    }
+
+    private <R, ID> Map<ID, R> sortByIds(Collection<ID> ids, Map<ID, R> values) {
+        Map<ID, R> sorted = new LinkedHashMap<>(values.size() * 2);
+        for (ID id : ids) {
+            R r = values.get(id);
+            if (r != null) {
+                sorted.put(id, r);
+            }
+        }
+        return sorted;
+    }
+
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 0.先查本地缓存，本地缓存中保存的是反序列化后的RedisData
+        Object local = localCache.get(key, false);
+        if (local instanceof RedisData && ((RedisData) local).getExpireTime().isAfter(LocalDateTime.now())) {
+            localHits.increment();
+            return type.cast(((RedisData) local).getData());
+        }
+        localMisses.increment();
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = cacheRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             // 3.存在，直接返回
+            redisMisses.increment();
             return null;
         }
-        // 4.命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        redisHits.increment();
+        // 4.命中，需要先把数据反序列化为对象
+        RedisData redisData = cacheCodec.decodeLogical(bytes, type);
+        R r = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5.判断是否过期
         if(expireTime.isAfter(LocalDateTime.now())) {
             // 5.1.未过期，直接返回店铺信息
+            localCache.put(key, redisData);
             return r;
         }
         // 5.2.已过期，需要缓存重建
@@ -120,49 +316,89 @@ public class CacheClient {
     public <R, ID> R queryWithMutex(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 0.先查本地缓存
+        Object local = localCache.get(key, false);
+        if (local != null) {
+            localHits.increment();
+            return local == NULL_VALUE ? null : type.cast(local);
+        }
+        localMisses.increment();
         // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = cacheRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
+        if (bytes != null && bytes.length > 0) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(shopJson, type);
+            redisHits.increment();
+            R r = cacheCodec.decode(bytes, type);
+            localCache.put(key, r);
+            return r;
         }
         // 判断命中的是否是空值
-        if (shopJson != null) {
+        if (bytes != null) {
             // 返回一个错误信息
+            redisHits.increment();
+            localCache.put(key, NULL_VALUE);
             return null;
         }
+        redisMisses.increment();
 
-        // 4.实现缓存重建
+        // 4.实现缓存重建，同一节点上的并发请求合并为一次重建
+        return singleFlight.execute(key, () -> rebuildWithMutex(key, id, type, dbFallback, time, unit));
+    }
+
+    private <R, ID> R rebuildWithMutex(
+            String key, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         // 4.1.获取互斥锁
         String lockKey = LOCK_SHOP_KEY + id;
-        R r = null;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL);
+        while (!tryLock(lockKey)) {
+            // 4.2.获取锁失败，说明其他节点正在重建，短暂退避后检查缓存是否已写回
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("缓存重建超时");
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            byte[] bytes = cacheRedisTemplate.opsForValue().get(key);
+            if (bytes != null) {
+                return cacheLocally(key, bytes, type);
+            }
+        }
         try {
-            boolean isLock = tryLock(lockKey);
-            // 4.2.判断是否获取成功
-            if (!isLock) {
-                // 4.3.获取锁失败，休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+            // 4.3.获取锁成功，再次检查缓存，避免重复重建
+            byte[] bytes = cacheRedisTemplate.opsForValue().get(key);
+            if (bytes != null) {
+                return cacheLocally(key, bytes, type);
             }
-            // 4.4.获取锁成功，根据id查询数据库
-            r = dbFallback.apply(id);
+            // 4.4.根据id查询数据库
+            R r = dbFallback.apply(id);
             // 5.不存在，返回错误
             if (r == null) {
                 // 将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                cacheRedisTemplate.opsForValue().set(key, EMPTY, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                localCache.put(key, NULL_VALUE);
                 // 返回错误信息
                 return null;
             }
             // 6.存在，写入redis
             this.set(key, r, time, unit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }finally {
+            return r;
+        } finally {
             // 7.释放锁
             unlock(lockKey);
         }
-        // 8.返回
+    }
+
+    private <R> R cacheLocally(String key, byte[] bytes, Class<R> type) {
+        if (bytes.length == 0) {
+            localCache.put(key, NULL_VALUE);
+            return null;
+        }
+        R r = cacheCodec.decode(bytes, type);
+        localCache.put(key, r);
         return r;
     }
 
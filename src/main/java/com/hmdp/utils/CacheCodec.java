@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的序列化方式
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化
+     * @param value 缓存的对象
+     * @return 写入Redis的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化
+     * @param bytes Redis中读取的字节，不为空
+     * @param type 目标类型
+     * @return 对象
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    /**
+     * 反序列化逻辑过期的数据，data字段直接解析为目标类型
+     * @param bytes Redis中读取的字节，不为空
+     * @param type data的类型
+     * @return 逻辑过期数据
+     */
+    <T> RedisData decodeLogical(byte[] bytes, Class<T> type);
+}
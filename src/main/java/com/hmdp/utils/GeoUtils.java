@@ -0,0 +1,24 @@
+package com.hmdp.utils;
+
+public class GeoUtils {
+    /**
+     * 地球半径（米），与Redis GEO一致
+     */
+    public static final double EARTH_RADIUS = 6372797.560856;
+
+    /**
+     * 纬度1度对应的距离（米）
+     */
+    public static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS;
+
+    /**
+     * 两个经纬度之间的距离（米），与Redis GEO使用相同的算法
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+}
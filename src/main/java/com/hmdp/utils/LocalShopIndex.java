@@ -0,0 +1,286 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGED_CHANNEL;
+import static com.hmdp.utils.SystemConstants.GEO_MAX_RADIUS;
+import static com.hmdp.utils.SystemConstants.GEO_MIN_RADIUS;
+import static com.hmdp.utils.SystemConstants.GEO_MIN_RESULTS;
+import static com.hmdp.utils.SystemConstants.GEO_REBUILD_BATCH_SIZE;
+import static com.hmdp.utils.SystemConstants.LOCAL_GRID_PRECISION;
+
+/**
+ * <p>
+ * 进程内的商铺空间索引（可选）：启动时从tb_shop加载全部商铺，按类型建立网格索引，
+ * 附近商铺的查询、距离计算和详情都在本地完成，不再访问Redis GEO和数据库。
+ * 商铺变更通过pub/sub通知所有节点，各节点重新加载该商铺并重建所在类型的网格
+ * </p>
+ */
+@Slf4j
+@Component
+public class LocalShopIndex {
+
+    private final boolean enabled;
+
+    private final ShopMapper shopMapper;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 商铺id -> 商铺，查询结果复制后返回
+     */
+    private final Map<Long, Shop> shops = new ConcurrentHashMap<>();
+
+    /**
+     * 类型id -> 网格，网格不可变，变更时整体替换
+     */
+    private final Map<Long, Grid> grids = new ConcurrentHashMap<>();
+
+    /**
+     * 加载期间收到变更的商铺id，加载时跳过，以reload读到的已提交数据为准
+     */
+    private final Set<Long> changedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    public LocalShopIndex(ShopMapper shopMapper, RedisMessageListenerContainer listenerContainer,
+                          @Value("${hmdp.shop.local-index:false}") boolean enabled) {
+        this.shopMapper = shopMapper;
+        this.listenerContainer = listenerContainer;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        // 1.先订阅变更，加载期间的变更不会丢失
+        listenerContainer.addMessageListener(
+                (message, pattern) -> reload(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SHOP_CHANGED_CHANNEL)
+        );
+        // 2.按主键分批加载全部商铺 select * from tb_shop where id > ? order by id limit ?
+        long lastId = 0;
+        while (true) {
+            List<Shop> batch = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).orderByAsc("id").last("limit " + GEO_REBUILD_BATCH_SIZE));
+            // 与reload互斥，批量读到的可能是变更前的数据，不能覆盖reload的结果
+            synchronized (this) {
+                for (Shop shop : batch) {
+                    if (!changedWhileLoading.contains(shop.getId())) {
+                        shops.put(shop.getId(), shop);
+                    }
+                }
+            }
+            if (batch.size() < GEO_REBUILD_BATCH_SIZE) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+        // 3.按类型建立网格，同样与reload互斥
+        synchronized (this) {
+            Map<Long, List<Shop>> byType = shops.values().stream()
+                    .filter(shop -> shop.getTypeId() != null)
+                    .collect(Collectors.groupingBy(Shop::getTypeId));
+            byType.forEach((typeId, list) -> grids.put(typeId, new Grid(list)));
+            ready = true;
+            changedWhileLoading.clear();
+        }
+        log.info("本地商铺索引加载完成，类型数：{}，商铺数：{}", grids.size(), shops.size());
+    }
+
+    /**
+     * 是否可以查询，未开启或还在加载时由调用方使用Redis GEO
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询坐标附近的商铺，结果太少时扩大半径
+     * @param from 按距离排序后的起始位置
+     * @param end 按距离排序后的结束位置（不包含）
+     * @return 设置了距离的商铺副本
+     */
+    public List<Shop> nearby(Long typeId, double x, double y, int from, int end) {
+        Grid grid = grids.get(typeId);
+        if (grid == null) {
+            return Collections.emptyList();
+        }
+        // 1.搜索半径内的商铺
+        int radius = GEO_MIN_RADIUS;
+        List<Hit> hits;
+        while (true) {
+            hits = grid.search(x, y, radius);
+            if (hits.size() >= GEO_MIN_RESULTS || radius >= GEO_MAX_RADIUS) {
+                break;
+            }
+            radius = Math.min(radius * 2, GEO_MAX_RADIUS);
+        }
+        if (hits.size() <= from) {
+            return Collections.emptyList();
+        }
+        // 2.按(距离, id)排序，只复制当前页
+        hits.sort((a, b) -> a.distance != b.distance
+                ? Double.compare(a.distance, b.distance) : Long.compare(a.id, b.id));
+        List<Shop> page = new ArrayList<>(end - from);
+        for (Hit hit : hits.subList(from, Math.min(end, hits.size()))) {
+            Shop shop = shops.get(hit.id);
+            if (shop == null) {
+                continue;
+            }
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(hit.distance);
+            page.add(copy);
+        }
+        return page;
+    }
+
+    /**
+     * 重新加载变更的商铺，重建变更前后所在类型的网格
+     */
+    /**
+     * 重新加载商铺，shop:changed在数据库事务提交后发布，这里读到的是提交后的数据
+     */
+    private synchronized void reload(Long shopId) {
+        if (!ready) {
+            changedWhileLoading.add(shopId);
+        }
+        try {
+            Shop before = shops.get(shopId);
+            Shop after = shopMapper.selectById(shopId);
+            if (after == null) {
+                shops.remove(shopId);
+            } else {
+                shops.put(shopId, after);
+            }
+            if (before != null) {
+                rebuildGrid(before.getTypeId());
+            }
+            if (after != null && (before == null || !Objects.equals(before.getTypeId(), after.getTypeId()))) {
+                rebuildGrid(after.getTypeId());
+            }
+        } catch (Exception e) {
+            log.error("更新本地商铺索引异常，shopId：{}", shopId, e);
+        }
+    }
+
+    private void rebuildGrid(Long typeId) {
+        if (typeId == null) {
+            return;
+        }
+        List<Shop> list = shops.values().stream()
+                .filter(shop -> typeId.equals(shop.getTypeId()))
+                .collect(Collectors.toList());
+        if (list.isEmpty()) {
+            grids.remove(typeId);
+        } else {
+            grids.put(typeId, new Grid(list));
+        }
+    }
+
+    private static long cellKey(long cellX, long cellY) {
+        return cellX << 32 | (cellY & 0xFFFFFFFFL);
+    }
+
+    private static class Hit {
+        private final long id;
+        private final double distance;
+
+        private Hit(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * 一个类型的网格索引：商铺按所在网格排序后存放在基本类型数组中，每个网格对应数组中的一段
+     */
+    private static class Grid {
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+        /**
+         * 网格 -> [起始下标, 结束下标)
+         */
+        private final Map<Long, int[]> cells = new HashMap<>();
+
+        private Grid(List<Shop> shops) {
+            List<Shop> sorted = shops.stream()
+                    .filter(shop -> shop.getX() != null && shop.getY() != null)
+                    .sorted((a, b) -> Long.compare(cellOf(a), cellOf(b)))
+                    .collect(Collectors.toList());
+            int n = sorted.size();
+            ids = new long[n];
+            xs = new double[n];
+            ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                Shop shop = sorted.get(i);
+                ids[i] = shop.getId();
+                xs[i] = shop.getX();
+                ys[i] = shop.getY();
+                long cell = cellOf(shop);
+                int[] range = cells.get(cell);
+                if (range == null) {
+                    cells.put(cell, new int[]{i, i + 1});
+                } else {
+                    range[1] = i + 1;
+                }
+            }
+        }
+
+        private static long cellOf(Shop shop) {
+            return cellKey((long) Math.floor(shop.getX() * LOCAL_GRID_PRECISION),
+                    (long) Math.floor(shop.getY() * LOCAL_GRID_PRECISION));
+        }
+
+        /**
+         * 只检查半径覆盖的网格
+         */
+        private List<Hit> search(double x, double y, int radius) {
+            double latSpan = radius / GeoUtils.METERS_PER_DEGREE;
+            double lonSpan = latSpan / Math.max(Math.cos(Math.toRadians(y)), 0.01);
+            long minCellX = (long) Math.floor((x - lonSpan) * LOCAL_GRID_PRECISION);
+            long maxCellX = (long) Math.floor((x + lonSpan) * LOCAL_GRID_PRECISION);
+            long minCellY = (long) Math.floor((y - latSpan) * LOCAL_GRID_PRECISION);
+            long maxCellY = (long) Math.floor((y + latSpan) * LOCAL_GRID_PRECISION);
+            List<Hit> hits = new ArrayList<>();
+            for (long cellX = minCellX; cellX <= maxCellX; cellX++) {
+                for (long cellY = minCellY; cellY <= maxCellY; cellY++) {
+                    int[] range = cells.get(cellKey(cellX, cellY));
+                    if (range == null) {
+                        continue;
+                    }
+                    for (int i = range[0]; i < range[1]; i++) {
+                        double distance = GeoUtils.distance(x, y, xs[i], ys[i]);
+                        if (distance <= radius) {
+                            hits.add(new Hit(ids[i], distance));
+                        }
+                    }
+                }
+            }
+            return hits;
+        }
+    }
+}
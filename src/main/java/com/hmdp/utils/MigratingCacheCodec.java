@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+/**
+ * 迁移模式：写入使用Smile二进制格式，读取时同时兼容Smile和旧的JSON格式，
+ * 旧数据随缓存过期或重建逐步替换为新格式
+ */
+public class MigratingCacheCodec implements CacheCodec {
+
+    private final SmileCacheCodec smileCodec;
+
+    private final JsonCacheCodec jsonCodec;
+
+    public MigratingCacheCodec(SmileCacheCodec smileCodec, JsonCacheCodec jsonCodec) {
+        this.smileCodec = smileCodec;
+        this.jsonCodec = jsonCodec;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return smileCodec.encode(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return SmileCacheCodec.isSmile(bytes) ? smileCodec.decode(bytes, type) : jsonCodec.decode(bytes, type);
+    }
+
+    @Override
+    public <T> RedisData decodeLogical(byte[] bytes, Class<T> type) {
+        return SmileCacheCodec.isSmile(bytes)
+                ? smileCodec.decodeLogical(bytes, type) : jsonCodec.decodeLogical(bytes, type);
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * 接口限流，由RateLimitInterceptor按滑动窗口判断。
+ * user、ip、global分别为每个窗口内单个用户、单个IP、所有请求的上限，0表示该维度不限流
+ * </p>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    /**
+     * 限流key的名称，默认为 类名.方法名
+     */
+    String name() default "";
+
+    /**
+     * 窗口长度（秒）
+     */
+    int window() default 1;
+
+    int user() default 0;
+
+    int ip() default 0;
+
+    int global() default 0;
+}
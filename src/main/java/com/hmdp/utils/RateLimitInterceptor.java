@@ -0,0 +1,97 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 按接口上的@RateLimit限流，需要在RefreshTokenInterceptor之后执行才能拿到当前用户
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiter rateLimiter;
+
+    /**
+     * 可信的反向代理地址，只有请求来自这些地址时才读取X-Forwarded-For
+     */
+    private final Set<String> trustedProxies;
+
+    /**
+     * @param trustedProxies 可信的反向代理地址，逗号分隔，为空时直接使用连接的对端地址
+     */
+    public RateLimitInterceptor(RateLimiter rateLimiter, String trustedProxies) {
+        this.rateLimiter = rateLimiter;
+        this.trustedProxies = StrUtil.splitTrim(StrUtil.nullToEmpty(trustedProxies), ',').stream()
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        RateLimit rateLimit = ((HandlerMethod) handler).getMethodAnnotation(RateLimit.class);
+        if (rateLimit == null) {
+            return true;
+        }
+        //限流key：limit:名称:维度
+        Method method = ((HandlerMethod) handler).getMethod();
+        String name = StrUtil.isBlank(rateLimit.name())
+                ? method.getDeclaringClass().getSimpleName() + "." + method.getName() : rateLimit.name();
+        String prefix = RATE_LIMIT_KEY + name;
+        List<String> keys = new ArrayList<>(3);
+        List<Integer> limits = new ArrayList<>(3);
+        UserDTO user = UserHolder.getUser();
+        if (rateLimit.user() > 0 && user != null) {
+            keys.add(prefix + ":user:" + user.getId());
+            limits.add(rateLimit.user());
+        }
+        if (rateLimit.ip() > 0) {
+            keys.add(prefix + ":ip:" + clientIp(request));
+            limits.add(rateLimit.ip());
+        }
+        if (rateLimit.global() > 0) {
+            keys.add(prefix + ":global");
+            limits.add(rateLimit.global());
+        }
+        if (rateLimiter.tryAcquire(keys, limits, rateLimit.window())) {
+            return true;
+        }
+        //超限  429-请求过多
+        response.setStatus(429);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")));
+        return false;
+    }
+
+    /**
+     * 客户端IP：请求头可以被客户端伪造，只有连接来自可信代理时才读取X-Forwarded-For，
+     * 从右向左跳过可信代理，第一个不可信的地址就是客户端
+     */
+    private String clientIp(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (!trustedProxies.contains(remote)) {
+            return remote;
+        }
+        List<String> forwarded = StrUtil.splitTrim(request.getHeader("X-Forwarded-For"), ',');
+        for (int i = forwarded.size() - 1; i >= 0; i--) {
+            if (!trustedProxies.contains(forwarded.get(i))) {
+                return forwarded.get(i);
+            }
+        }
+        return remote;
+    }
+}
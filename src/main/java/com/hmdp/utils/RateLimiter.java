@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 基于Redis的滑动窗口限流，一次Lua调用同时判断多个维度（用户、IP、全局）。
+ * 开启本地预聚合（hmdp.rate-limit.local）后，请求只在本地计数，定时批量提交到Redis并取回各节点的总计数，
+ * 每个请求不再访问Redis，代价是限流结果有一个同步周期的误差
+ * </p>
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RATE_LIMIT_SYNC_SCRIPT;
+
+    /**
+     * 每次同步提交的最大key数量
+     */
+    private static final int SYNC_BATCH_SIZE = 500;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+        RATE_LIMIT_SYNC_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SYNC_SCRIPT.setLocation(new ClassPathResource("rate_limit_sync.lua"));
+        RATE_LIMIT_SYNC_SCRIPT.setResultType(List.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final boolean local;
+
+    private final Map<String, LocalCounter> counters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService syncExecutor;
+
+    public RateLimiter(StringRedisTemplate stringRedisTemplate,
+                       @Value("${hmdp.rate-limit.local:false}") boolean local,
+                       @Value("${hmdp.rate-limit.sync-interval:100}") long syncIntervalMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.local = local;
+        if (local) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor();
+            syncExecutor.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 尝试通过限流，Redis异常时放行
+     * @param keys 各维度的限流key
+     * @param limits 与keys一一对应的窗口内上限
+     * @param window 窗口长度（秒）
+     * @return 所有维度都未超限时返回true，并计数
+     */
+    public boolean tryAcquire(List<String> keys, List<Integer> limits, int window) {
+        if (keys.isEmpty()) {
+            return true;
+        }
+        if (local) {
+            return tryAcquireLocal(keys, limits, window);
+        }
+        Object[] args = new Object[limits.size() + 2];
+        args[0] = String.valueOf(window);
+        args[1] = "1";
+        for (int i = 0; i < limits.size(); i++) {
+            args[i + 2] = limits.get(i).toString();
+        }
+        try {
+            Long result = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, keys, args);
+            return result == null || result == 0;
+        } catch (Exception e) {
+            log.error("限流判断异常，放行", e);
+            return true;
+        }
+    }
+
+    private boolean tryAcquireLocal(List<String> keys, List<Integer> limits, int window) {
+        List<LocalCounter> list = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            LocalCounter counter = counters.computeIfAbsent(keys.get(i), key -> new LocalCounter(window));
+            if (counter.estimate() + 1 > limits.get(i)) {
+                return false;
+            }
+            list.add(counter);
+        }
+        long now = System.currentTimeMillis();
+        for (LocalCounter counter : list) {
+            counter.pending.incrementAndGet();
+            counter.lastAccess = now;
+        }
+        return true;
+    }
+
+    /**
+     * 提交本地计数并取回总计数，按窗口长度分组，每组一次Lua调用
+     */
+    private void sync() {
+        try {
+            Map<Integer, List<String>> windowKeys = new HashMap<>();
+            counters.forEach((key, counter) -> windowKeys.computeIfAbsent(counter.window, w -> new ArrayList<>()).add(key));
+            for (Map.Entry<Integer, List<String>> entry : windowKeys.entrySet()) {
+                List<String> keys = entry.getValue();
+                for (int from = 0; from < keys.size(); from += SYNC_BATCH_SIZE) {
+                    sync(entry.getKey(), keys.subList(from, Math.min(from + SYNC_BATCH_SIZE, keys.size())));
+                }
+            }
+            // 清理长时间没有请求的计数
+            long now = System.currentTimeMillis();
+            counters.entrySet().removeIf(e -> e.getValue().pending.get() == 0
+                    && now - e.getValue().lastAccess > TimeUnit.SECONDS.toMillis(e.getValue().window * 2L));
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会停止
+            log.error("同步限流计数异常", e);
+        }
+    }
+
+    private void sync(int window, List<String> keys) {
+        List<LocalCounter> list = new ArrayList<>(keys.size());
+        Object[] args = new Object[keys.size() + 1];
+        args[0] = String.valueOf(window);
+        long[] deltas = new long[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            LocalCounter counter = counters.get(keys.get(i));
+            list.add(counter);
+            deltas[i] = counter == null ? 0 : counter.pending.get();
+            args[i + 1] = String.valueOf(deltas[i]);
+        }
+        List<?> counts = stringRedisTemplate.execute(RATE_LIMIT_SYNC_SCRIPT, keys, args);
+        if (counts == null) {
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            LocalCounter counter = list.get(i);
+            if (counter == null) {
+                continue;
+            }
+            // 先更新总计数再扣减已提交的部分，避免中间状态少算
+            counter.remote = ((Number) counts.get(i)).longValue();
+            counter.pending.addAndGet(-deltas[i]);
+        }
+    }
+
+    private static class LocalCounter {
+        private final int window;
+        /**
+         * 本节点尚未提交的请求数
+         */
+        private final AtomicLong pending = new AtomicLong();
+        /**
+         * 上次同步时所有节点的滑动窗口计数
+         */
+        private volatile long remote;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private LocalCounter(int window) {
+            this.window = window;
+        }
+
+        private long estimate() {
+            return remote + pending.get();
+        }
+    }
+}
@@ -5,18 +5,62 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final String LOGIN_INVALIDATE_CHANNEL = "login:invalidate";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked:";
+    public static final String LOGIN_REVOKE_CHANNEL = "login:revoke";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_TIME_KEY = "seckill:time:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_STOCK_CHANGED_CHANNEL = "seckill:stock:changed";
+    public static final String LOCK_SECKILL_WARM_UP_KEY = "lock:seckill:warmup:";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DLQ = "stream.orders.dlq";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKE_COUNT_KEY = "blog:likecount";
+    public static final String BLOG_LIKE_DELTA_KEY = "blog:likecount:delta";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:likecount:flushing";
+    public static final String BLOG_LIKE_FLUSH_GEN_KEY = "blog:likecount:gen";
+    public static final String BLOG_LIKE_SNAPSHOT_KEY = "blog:likecount:snapshot";
+    public static final String LOCK_LIKE_FLUSH_KEY = "lock:blog:like:flush";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String LOCK_HOT_REBUILD_KEY = "lock:blog:hot:rebuild";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_BIG_V_KEY = "feed:bigv";
+    public static final String FEED_STREAM = "stream.feed";
+    public static final String FEED_GROUP = "g1";
+    public static final String FEED_CHECKPOINT_KEY = "feed:checkpoint:";
+    public static final Long FEED_CHECKPOINT_TTL = 24L;
+    public static final String RATE_LIMIT_KEY = "limit:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_CELL_KEY = "shop:geo:cell:";
+    public static final String SHOP_GEO_STAGING_SUFFIX = ":staging";
+    public static final String SHOP_GEO_DELETED_SUFFIX = ":deleted";
+    public static final String SHOP_GEO_REBUILDING_SUFFIX = ":rebuilding";
+    public static final Long SHOP_GEO_REBUILDING_TTL = 3600L;
+    public static final String LOCK_GEO_REBUILD_KEY = "lock:shop:geo:rebuild";
+    public static final String SHOP_CHANGED_CHANNEL = "shop:changed";
+    public static final Long SHOP_GEO_CELL_TTL = 60L;
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String REF_DATA_VERSION_KEY = "refdata:version:";
+    public static final String REF_DATA_CHANGED_CHANNEL = "refdata:changed";
 }
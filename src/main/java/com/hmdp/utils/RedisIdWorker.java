@@ -1,12 +1,24 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
 public class RedisIdWorker {
     /**
@@ -18,25 +30,165 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
-    private StringRedisTemplate stringRedisTemplate;
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60L;
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * 当前号段剩余不足该比例时，异步预取下一个号段
+     */
+    private static final double PREFETCH_RATIO = 0.2;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 每次从Redis申请的序列号个数，为1时退化为每个ID一次INCR
+     */
+    private final int segmentSize;
+
+    private final ConcurrentHashMap<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * 异步预取号段的线程，守护线程不阻止JVM退出
+     */
+    private final ExecutorService segmentPrefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-size:1000}") int segmentSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("号段长度必须大于0：" + segmentSize);
+        }
         this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = segmentSize;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        segmentPrefetchExecutor.shutdownNow();
     }
 
     public long nextId(String keyPrefix) {
         // 1.生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
 
-        // 2.生成序列号
-        // 2.1.获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2.自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        // 2.生成序列号，按天重新计数
+        long day = nowSecond / SECONDS_PER_DAY;
+        long count;
+        if (segmentSize == 1) {
+            count = increment(keyPrefix, day, 1);
+        } else {
+            count = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).nextSequence(day);
+        }
 
         // 3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * 自增长，返回增长后的值
+     */
+    private long increment(String keyPrefix, long day, int delta) {
+        // 获取日期，精确到天
+        String date = LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, delta);
+        if (count == null) {
+            throw new IllegalStateException("生成序列号失败：" + keyPrefix);
+        }
+        return count;
+    }
+
+    /**
+     * 从Redis申请的一段连续序列号 [start, end]
+     */
+    private static class Segment {
+        private final long day;
+        private final long end;
+        private final long prefetchAt;
+        private final AtomicLong cursor;
+
+        private Segment(long day, long start, long end, long prefetchAt) {
+            this.day = day;
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 双缓冲：当前号段在本地发放，消耗到一定比例后异步申请下一个号段，切换时通常无需等待Redis
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private CompletableFuture<Segment> next;
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        private long nextSequence(long day) {
+            while (true) {
+                Segment segment = current;
+                if (segment == null || segment.day != day) {
+                    // 首次使用或已跨天
+                    switchSegment(segment, day);
+                    continue;
+                }
+                long sequence = segment.cursor.getAndIncrement();
+                if (sequence > segment.end) {
+                    // 号段用尽
+                    switchSegment(segment, day);
+                    continue;
+                }
+                if (sequence == segment.prefetchAt) {
+                    prefetch(segment);
+                }
+                return sequence;
+            }
+        }
+
+        private Segment allocate(long day) {
+            long end = increment(keyPrefix, day, segmentSize);
+            long start = end - segmentSize + 1;
+            return new Segment(day, start, end, end - (long) (segmentSize * PREFETCH_RATIO));
+        }
+
+        private synchronized void prefetch(Segment segment) {
+            if (current != segment || next != null) {
+                return;
+            }
+            try {
+                next = CompletableFuture.supplyAsync(() -> allocate(segment.day), segmentPrefetchExecutor);
+            } catch (RejectedExecutionException e) {
+                // 已经关闭，用尽时同步申请
+                next = null;
+            }
+        }
+
+        private synchronized void switchSegment(Segment exhausted, long day) {
+            if (current != exhausted) {
+                // 其他线程已经切换
+                return;
+            }
+            Segment candidate = null;
+            if (next != null) {
+                try {
+                    candidate = next.join();
+                } catch (CompletionException e) {
+                    log.warn("预取号段失败，同步重新申请：{}", keyPrefix, e.getCause());
+                }
+                next = null;
+            }
+            if (candidate == null || candidate.day != day) {
+                // 没有可用的预取号段，或预取的号段属于前一天
+                candidate = allocate(day);
+            }
+            current = candidate;
+        }
+    }
 }
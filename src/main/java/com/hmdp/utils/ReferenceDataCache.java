@@ -0,0 +1,213 @@
+package com.hmdp.utils;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.REF_DATA_CHANGED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.REF_DATA_VERSION_KEY;
+
+/**
+ * <p>
+ * 数据量小、很少变更的基础数据（如商铺类型）的本地缓存：
+ * 1.每张表在内存中保存一份不可变的快照，查询不访问数据库和Redis
+ * 2.Redis中保存每张表的版本号，修改数据后调用bump增加版本号并通过pub/sub通知所有节点重新加载
+ * 3.定时比对版本号，错过通知的节点也能在一个周期内更新
+ * 快照的ETag由内容计算，数据相同的节点返回相同的ETag
+ * </p>
+ */
+@Slf4j
+@Component
+public class ReferenceDataCache {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 比对版本号的间隔（秒）
+     */
+    private final long checkInterval;
+
+    private final Map<String, Table<?>> tables = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService versionCheckExecutor;
+
+    public ReferenceDataCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                              @Value("${hmdp.ref-data.check-interval:30}") long checkInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.checkInterval = checkInterval;
+    }
+
+    @PostConstruct
+    private void init() {
+        // 1.订阅变更通知，消息内容为表名
+        listenerContainer.addMessageListener((message, pattern) -> {
+            Table<?> table = tables.get(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (table != null) {
+                table.refresh();
+            }
+        }, new ChannelTopic(REF_DATA_CHANGED_CHANNEL));
+        // 2.定时比对版本号
+        versionCheckExecutor = Executors.newSingleThreadScheduledExecutor();
+        versionCheckExecutor.scheduleWithFixedDelay(this::checkVersions, checkInterval, checkInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        versionCheckExecutor.shutdownNow();
+    }
+
+    /**
+     * 注册一张基础数据表，第一次查询时加载
+     * @param name 表名，用于版本号的key和变更通知
+     * @param loader 从数据库加载全部数据
+     */
+    public <T> Table<T> register(String name, Supplier<List<T>> loader) {
+        Table<T> table = new Table<>(name, loader);
+        if (tables.putIfAbsent(name, table) != null) {
+            throw new IllegalStateException("基础数据表重复注册：" + name);
+        }
+        return table;
+    }
+
+    /**
+     * 增加版本号并通知所有节点重新加载，在修改数据之后调用
+     * @return 新的版本号
+     */
+    public long bump(String name) {
+        Long version = stringRedisTemplate.opsForValue().increment(REF_DATA_VERSION_KEY + name);
+        stringRedisTemplate.convertAndSend(REF_DATA_CHANGED_CHANNEL, name);
+        return version == null ? 0 : version;
+    }
+
+    private void checkVersions() {
+        try {
+            // 只比对已经加载过的表，一次MGET
+            List<Table<?>> loaded = tables.values().stream()
+                    .filter(table -> table.snapshot != null)
+                    .collect(Collectors.toList());
+            if (loaded.isEmpty()) {
+                return;
+            }
+            List<String> keys = loaded.stream().map(table -> REF_DATA_VERSION_KEY + table.name).collect(Collectors.toList());
+            List<String> versions = stringRedisTemplate.opsForValue().multiGet(keys);
+            if (versions == null) {
+                return;
+            }
+            for (int i = 0; i < loaded.size(); i++) {
+                Table<?> table = loaded.get(i);
+                if (parseVersion(versions.get(i)) != table.snapshot.version) {
+                    table.refresh();
+                }
+            }
+        } catch (Exception e) {
+            log.error("比对基础数据版本号异常", e);
+        }
+    }
+
+    private long readVersion(String name) {
+        return parseVersion(stringRedisTemplate.opsForValue().get(REF_DATA_VERSION_KEY + name));
+    }
+
+    private static long parseVersion(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    public class Table<T> {
+        private final String name;
+        private final Supplier<List<T>> loader;
+        private volatile Snapshot<T> snapshot;
+
+        private Table(String name, Supplier<List<T>> loader) {
+            this.name = name;
+            this.loader = loader;
+        }
+
+        /**
+         * 当前快照，只有第一次查询时加载
+         */
+        public Snapshot<T> get() {
+            Snapshot<T> current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            synchronized (this) {
+                if (snapshot == null) {
+                    load();
+                }
+                return snapshot;
+            }
+        }
+
+        private synchronized void refresh() {
+            try {
+                load();
+            } catch (Exception e) {
+                // 继续使用旧的快照，等待下一次比对版本号
+                log.error("重新加载基础数据异常：{}", name, e);
+            }
+        }
+
+        private void load() {
+            // 先读版本号再加载数据，加载期间的变更会在下一次比对时发现
+            long version = readVersion(name);
+            List<T> list = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+            snapshot = new Snapshot<>(version, list);
+            log.info("基础数据加载完成：{}，版本号：{}，条数：{}", name, version, list.size());
+        }
+    }
+
+    @Getter
+    public static class Snapshot<T> {
+        private final long version;
+        private final List<T> list;
+        private final String etag;
+
+        private Snapshot(long version, List<T> list) {
+            this.version = version;
+            this.list = list;
+            this.etag = "\"" + DigestUtil.md5Hex(JSONUtil.toJsonStr(list)) + "\"";
+        }
+
+        /**
+         * 请求头If-None-Match是否与当前快照一致，一致时可以返回304
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,16 +1,11 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
-import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @ClassName LoginInterceptor
@@ -20,10 +15,10 @@ import java.util.concurrent.TimeUnit;
  **/
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private SessionStore sessionStore;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
     }
 
     @Override
@@ -34,26 +29,21 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             //用户不存在，放行
             return true;
         }
-        //从redis获取用户信息进行校验
-//        HttpSession session = request.getSession();
-        String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
-//        Object user = session.getAttribute("user");
-        if (userMap.isEmpty()) {
+        //获取token对应的用户：Redis会话优先读本地缓存并限频刷新有效期，签名token只在本地验签
+        UserDTO userDTO = sessionStore.get(token);
+        if (userDTO == null) {
             //用户不存在，放行  如token过期
             return true;
         }
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         //保存用户信息到线程内部
         UserHolder.saveUser(userDTO);
-        //刷新token有效期
-        stringRedisTemplate.expire(key,RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
         //放行
         return true;
     }
 
     @Override
-    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) throws Exception {
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        //请求被后续拦截器拒绝（如限流）或抛出异常时postHandle不会执行，在afterCompletion中清理
         UserHolder.removeUser();
     }
 }
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.CursorResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * 键集分页的游标。列表按主键（或排序键 + 主键）排序，游标是上一页最后一条记录的位置，编码后对客户端不透明。
+ * 下一页从游标之后开始查询，不需要OFFSET和COUNT，第N页和第1页的代价相同
+ * </p>
+ */
+public class ScrollCursor {
+
+    private static final String PREFIX = "id:";
+
+    private static final String POSITION_PREFIX = "key:";
+
+    public static String encode(Long id) {
+        return Base64.encodeUrlSafe(PREFIX + id);
+    }
+
+    /**
+     * @return 游标为空时返回null，表示查询第一页
+     * @throws IllegalArgumentException 游标无效
+     */
+    public static Long decode(String cursor) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        String value = Base64.decodeStr(cursor, StandardCharsets.UTF_8);
+        if (!value.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("无效的游标：" + cursor);
+        }
+        return Long.valueOf(value.substring(PREFIX.length()));
+    }
+
+    /**
+     * 按(排序键, id)排序的列表的游标
+     */
+    public static String encode(double sortKey, Long id) {
+        return Base64.encodeUrlSafe(POSITION_PREFIX + sortKey + ":" + id);
+    }
+
+    /**
+     * @return 游标为空时返回null，表示查询第一页
+     * @throws IllegalArgumentException 游标无效
+     */
+    public static Position decodePosition(String cursor) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        String value = Base64.decodeStr(cursor, StandardCharsets.UTF_8);
+        int split = value.lastIndexOf(':');
+        if (!value.startsWith(POSITION_PREFIX) || split < POSITION_PREFIX.length()) {
+            throw new IllegalArgumentException("无效的游标：" + cursor);
+        }
+        return new Position(
+                Double.parseDouble(value.substring(POSITION_PREFIX.length(), split)),
+                Long.parseLong(value.substring(split + 1)));
+    }
+
+    /**
+     * 是否为按(排序键, id)排序的游标，同一个接口可能根据条件返回两种游标
+     */
+    public static boolean isPosition(String cursor) {
+        return StrUtil.isNotBlank(cursor)
+                && Base64.decodeStr(cursor, StandardCharsets.UTF_8).startsWith(POSITION_PREFIX);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Position {
+        private final double sortKey;
+        private final long id;
+
+        /**
+         * 记录是否排在游标之后
+         */
+        public boolean isBefore(double sortKey, long id) {
+            return this.sortKey < sortKey || (this.sortKey == sortKey && this.id < id);
+        }
+    }
+
+    /**
+     * 封装一页数据，rows需要多查询一条，用来判断是否还有下一页
+     * @param rows 按游标查询的数据，最多size + 1条
+     * @param size 每页数量
+     * @param idOf 获取记录id的函数
+     */
+    public static <T> CursorResult of(List<T> rows, int size, Function<T, Long> idOf) {
+        CursorResult r = new CursorResult();
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            r.setCursor(encode(idOf.apply(rows.get(size - 1))));
+        }
+        r.setList(rows);
+        return r;
+    }
+}
@@ -0,0 +1,237 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARDS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_CHANGED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * <p>
+ * 秒杀的本地准入控制，在执行Lua脚本之前过滤请求：
+ * 1.售罄标记：Lua脚本第一次返回库存不足后，通过pub/sub通知所有节点，之后的请求直接拒绝
+ * 2.令牌（可选）：每个优惠券的令牌数按Redis中的剩余库存初始化，令牌用完的请求直接拒绝，不再访问Redis，
+ *   令牌定期按Redis中的库存重新初始化，Redis中还没有库存时不创建令牌
+ * 库存分片数也缓存在本地。写入库存（预热、补货）后调用stockChanged通知所有节点清除售罄标记、令牌和分片数
+ * </p>
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+
+    /**
+     * 本地缓存分片数的时间，错过变更通知的节点最多使用这么久的旧值
+     */
+    private static final long SHARDS_TTL_MILLIS = 60_000;
+
+    /**
+     * 令牌按Redis中的库存重新初始化的间隔
+     */
+    private static final long TOKENS_TTL_MILLIS = 10_000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final boolean gateEnabled;
+
+    /**
+     * 令牌数 = 剩余库存 * gateFactor，大于1时给重复下单等失败的请求留出余量
+     */
+    private final double gateFactor;
+
+    private final Set<Long> soldOut = ConcurrentHashMap.newKeySet();
+
+    private final Map<Long, Tokens> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * 只缓存从Redis中读到的分片数，没有预热的优惠券不缓存
+     */
+    private final Map<Long, ShardCount> stockShards = new ConcurrentHashMap<>();
+
+    public SeckillAdmission(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer,
+                            @Value("${hmdp.seckill.gate.enabled:false}") boolean gateEnabled,
+                            @Value("${hmdp.seckill.gate.factor:1.0}") double gateFactor) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.gateEnabled = gateEnabled;
+        this.gateFactor = gateFactor;
+        // 订阅售罄广播
+        listenerContainer.addMessageListener(
+                (message, pattern) -> soldOut.add(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL)
+        );
+        // 订阅库存变更，清除本地状态
+        listenerContainer.addMessageListener(
+                (message, pattern) -> reset(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SECKILL_STOCK_CHANGED_CHANNEL)
+        );
+    }
+
+    /**
+     * 查询优惠券的库存分片数
+     * @return Redis中没有库存（优惠券不存在或还没有预热）时返回null
+     */
+    public Integer stockShards(Long voucherId) {
+        ShardCount cached = stockShards.get(voucherId);
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.expireAt > now) {
+            return cached.shards;
+        }
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + voucherId);
+        int shards;
+        if (value != null) {
+            shards = Integer.parseInt(value);
+        } else if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(SECKILL_STOCK_KEY + voucherId))) {
+            shards = 1;
+        } else {
+            stockShards.remove(voucherId);
+            return null;
+        }
+        stockShards.put(voucherId, new ShardCount(shards, now + SHARDS_TTL_MILLIS));
+        return shards;
+    }
+
+    /**
+     * 库存写入Redis后调用，通知所有节点（包括自己）清除该优惠券的本地状态
+     */
+    public void stockChanged(Long voucherId) {
+        reset(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_STOCK_CHANGED_CHANNEL, voucherId.toString());
+    }
+
+    private void reset(Long voucherId) {
+        soldOut.remove(voucherId);
+        tokens.remove(voucherId);
+        stockShards.remove(voucherId);
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.contains(voucherId);
+    }
+
+    /**
+     * 标记售罄并通知其他节点
+     */
+    public void markSoldOut(Long voucherId) {
+        if (soldOut.add(voucherId)) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 获取一个令牌
+     * @param shards 库存分片数，用于首次初始化令牌
+     * @return 未开启令牌过滤时总是返回true
+     */
+    public boolean tryAcquire(Long voucherId, int shards) {
+        if (!gateEnabled) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Tokens current = tokens.get(voucherId);
+        if (current == null || current.expireAt <= now) {
+            current = refreshTokens(voucherId, shards, current, now);
+        }
+        if (current == null) {
+            // Redis中还没有库存或读取失败，交给Lua脚本判断
+            return true;
+        }
+        AtomicLong remaining = current.remaining;
+        if (remaining.get() <= 0) {
+            return false;
+        }
+        return remaining.decrementAndGet() >= 0;
+    }
+
+    /**
+     * 归还令牌，用于没有消耗库存的请求（如重复下单）
+     */
+    public void release(Long voucherId) {
+        if (!gateEnabled) {
+            return;
+        }
+        Tokens current = tokens.get(voucherId);
+        if (current != null) {
+            current.remaining.incrementAndGet();
+        }
+    }
+
+    /**
+     * 在map外读取Redis，再用CAS替换过期的令牌，读取Redis期间不阻塞同一优惠券的其他请求
+     * @return 没有库存或读取失败时返回null
+     */
+    private Tokens refreshTokens(Long voucherId, int shards, Tokens expired, long now) {
+        Tokens fresh;
+        try {
+            fresh = initialTokens(voucherId, shards, now);
+        } catch (Exception e) {
+            // 令牌只是本地过滤，Redis异常时放行，由Lua脚本判断
+            log.warn("初始化秒杀令牌失败，voucherId：{}", voucherId, e);
+            return null;
+        }
+        if (fresh == null) {
+            if (expired != null) {
+                tokens.remove(voucherId, expired);
+            }
+            return null;
+        }
+        boolean installed = expired == null
+                ? tokens.putIfAbsent(voucherId, fresh) == null
+                : tokens.replace(voucherId, expired, fresh);
+        // 其他线程已经替换时使用它的令牌
+        return installed ? fresh : tokens.get(voucherId);
+    }
+
+    /**
+     * 按Redis中的剩余库存初始化令牌
+     * @return Redis中没有库存时返回null，不创建令牌
+     */
+    private Tokens initialTokens(Long voucherId, int shards, long now) {
+        long stock = 0;
+        boolean exists = false;
+        // 分片可能在集群的不同节点上，逐个读取
+        for (int shard = 0; shard < shards; shard++) {
+            String key = shards > 1
+                    ? SECKILL_STOCK_KEY + SeckillScripts.shardTag(voucherId, shard) : SECKILL_STOCK_KEY + voucherId;
+            String value = stringRedisTemplate.opsForValue().get(key);
+            if (value != null) {
+                exists = true;
+                stock += Math.max(Long.parseLong(value), 0);
+            }
+        }
+        if (!exists) {
+            return null;
+        }
+        return new Tokens((long) Math.ceil(stock * gateFactor), now + TOKENS_TTL_MILLIS);
+    }
+
+    private static class Tokens {
+        private final AtomicLong remaining;
+        private final long expireAt;
+
+        private Tokens(long remaining, long expireAt) {
+            this.remaining = new AtomicLong(remaining);
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class ShardCount {
+        private final int shards;
+        private final long expireAt;
+
+        private ShardCount(int shards, long expireAt) {
+            this.shards = shards;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+/**
+ * <p>
+ * 秒杀资格判断的Lua脚本，以及分片库存key的约定
+ * </p>
+ */
+public class SeckillScripts {
+
+    /**
+     * 未分片库存的资格判断：0成功，1库存不足，2重复下单，3尚未开始，4已经结束
+     */
+    public static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+    /**
+     * 分片库存的资格判断，返回值同SECKILL_SCRIPT
+     */
+    public static final DefaultRedisScript<Long> SECKILL_SHARD_SCRIPT;
+
+    //提前读取Lua脚本
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        SECKILL_SHARD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SECKILL_SHARD_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 分片key的hash tag {voucherId:shard}，同一分片的库存、下单用户和秒杀时间落在同一个slot
+     */
+    public static String shardTag(Long voucherId, int shard) {
+        return "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 用户固定所属的分片，一人一单在该分片上判断
+     */
+    public static int homeShard(Long userId, int shards) {
+        return Math.floorMod(userId.hashCode(), shards);
+    }
+}
@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+
+/**
+ * 登录会话的存储方式，由 hmdp.login.mode 选择：redis(Redis中的会话，默认)、signed(签名token，认证不访问Redis)
+ */
+public interface SessionStore {
+
+    /**
+     * 创建会话
+     * @param user 登录用户
+     * @return 返回给前端的登录凭证：redis模式为token字符串，signed模式为{token, refreshToken}
+     */
+    Object create(UserDTO user);
+
+    /**
+     * 获取token对应的用户
+     * @return 用户，token无效或已过期时返回null
+     */
+    UserDTO get(String token);
+
+    /**
+     * 登出，使token失效
+     */
+    void invalidate(String token);
+
+    /**
+     * 用refresh token换取新的token
+     * @return 新的token，不支持刷新或refresh token无效时返回null
+     */
+    String refresh(String refreshToken);
+}
@@ -0,0 +1,260 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_GEO_REBUILD_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_DELETED_SUFFIX;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILDING_SUFFIX;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_REBUILDING_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_STAGING_SUFFIX;
+import static com.hmdp.utils.SystemConstants.GEO_REBUILD_BATCH_SIZE;
+
+/**
+ * <p>
+ * 商铺GEO索引（shop:geo:{typeId}）的维护：
+ * 1.商铺新增、修改、删除时同步GEOADD、ZREM，类型变化时先加入新类型的索引再从旧类型的索引删除
+ * 2.全量重建：先给每个类型创建重建标记，按主键分批读取tb_shop，pipeline写入临时索引，
+ *   完成后把重建期间删除的商铺从临时索引去掉，再RENAME替换正式索引，查询不会读到不完整的索引
+ * 3.同一类型的正式索引、临时索引、删除记录、重建标记使用相同的hash tag，每次脚本只访问一个slot
+ * </p>
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex {
+
+    private static final DefaultRedisScript<Long> GEO_INDEX_SCRIPT;
+    private static final DefaultRedisScript<Long> GEO_REBUILD_FINISH_SCRIPT;
+
+    static {
+        GEO_INDEX_SCRIPT = new DefaultRedisScript<>();
+        GEO_INDEX_SCRIPT.setLocation(new ClassPathResource("geo_index.lua"));
+        GEO_INDEX_SCRIPT.setResultType(Long.class);
+
+        GEO_REBUILD_FINISH_SCRIPT = new DefaultRedisScript<>();
+        GEO_REBUILD_FINISH_SCRIPT.setLocation(new ClassPathResource("geo_rebuild_finish.lua"));
+        GEO_REBUILD_FINISH_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final ExecutorService GEO_REBUILD_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @PostConstruct
+    private void init() {
+        // 还没有任何索引时（首次启动、Redis数据丢失或升级前的key格式）在后台重建
+        if (scanKeys(SHOP_GEO_KEY + "{*}").isEmpty()) {
+            GEO_REBUILD_EXECUTOR.submit(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    log.error("重建商铺GEO索引异常", e);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        GEO_REBUILD_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 类型对应的正式索引 shop:geo:{typeId}
+     */
+    public static String key(Long typeId) {
+        return SHOP_GEO_KEY + "{" + typeId + "}";
+    }
+
+    /**
+     * 新增商铺
+     */
+    public void add(Shop shop) {
+        // 没有坐标的商铺不能GEOADD，从索引中删除
+        execute(shop, shop.getTypeId(), !hasLocation(shop));
+    }
+
+    /**
+     * 修改商铺，类型变化时从旧类型的索引中删除
+     * @param before 修改前的商铺
+     * @param after 修改后的商铺
+     */
+    public void update(Shop before, Shop after) {
+        if (before != null && !Objects.equals(before.getTypeId(), after.getTypeId())) {
+            // 两个类型的key不在同一个slot，分两次执行，先加入新类型，查询最多短暂地在两个类型中都看到
+            add(after);
+            execute(after, before.getTypeId(), true);
+            return;
+        }
+        if (before != null && hasLocation(after)
+                && Objects.equals(before.getX(), after.getX()) && Objects.equals(before.getY(), after.getY())) {
+            // 坐标没有变化
+            return;
+        }
+        add(after);
+    }
+
+    /**
+     * 删除商铺
+     */
+    public void remove(Shop shop) {
+        execute(shop, shop.getTypeId(), true);
+    }
+
+    private static boolean hasLocation(Shop shop) {
+        return shop.getX() != null && shop.getY() != null;
+    }
+
+    /**
+     * 类型对应的 (正式索引, 临时索引, 删除记录, 重建标记)
+     */
+    private static List<String> keys(Long typeId) {
+        String key = key(typeId);
+        return Arrays.asList(
+                key,
+                key + SHOP_GEO_STAGING_SUFFIX,
+                key + SHOP_GEO_DELETED_SUFFIX,
+                key + SHOP_GEO_REBUILDING_SUFFIX
+        );
+    }
+
+    private void execute(Shop shop, Long typeId, boolean remove) {
+        stringRedisTemplate.execute(
+                GEO_INDEX_SCRIPT, keys(typeId),
+                shop.getId().toString(), String.valueOf(shop.getX()), String.valueOf(shop.getY()),
+                remove ? "1" : "0"
+        );
+    }
+
+    /**
+     * 全量重建所有类型的GEO索引，多个节点同时触发时只有一个执行
+     * @return 写入索引的商铺数，未获取到锁时返回-1
+     */
+    public long rebuild() {
+        RLock lock = redissonClient.getLock(LOCK_GEO_REBUILD_KEY);
+        if (!lock.tryLock()) {
+            return -1;
+        }
+        try {
+            // 1.清理上次失败遗留的临时索引、删除记录和重建标记
+            Set<String> leftover = scanKeys(SHOP_GEO_KEY + "{*}:*");
+            if (!leftover.isEmpty()) {
+                stringRedisTemplate.delete(leftover);
+            }
+            // 2.读取数据前给现有的类型创建重建标记，之后的修改会同时写入临时索引
+            // select distinct type_id from tb_shop
+            Set<Long> typeIds = new HashSet<>();
+            for (String key : scanKeys(SHOP_GEO_KEY + "{*}")) {
+                typeIds.add(Long.valueOf(key.substring(SHOP_GEO_KEY.length() + 1, key.length() - 1)));
+            }
+            for (Object typeId : shopMapper.selectObjs(new QueryWrapper<Shop>().select("distinct type_id"))) {
+                typeIds.add(((Number) typeId).longValue());
+            }
+            typeIds.forEach(this::markRebuilding);
+            // 3.按主键分批读取，每批一次pipeline写入临时索引
+            // select id, type_id, x, y from tb_shop where id > ? order by id limit ?
+            long total = 0;
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + GEO_REBUILD_BATCH_SIZE));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                for (Shop shop : shops) {
+                    // 重建期间新增的类型，写入前补上重建标记
+                    if (typeIds.add(shop.getTypeId())) {
+                        markRebuilding(shop.getTypeId());
+                    }
+                }
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Shop shop : shops) {
+                        if (!hasLocation(shop)) {
+                            continue;
+                        }
+                        connection.geoCommands().geoAdd(
+                                (key(shop.getTypeId()) + SHOP_GEO_STAGING_SUFFIX).getBytes(StandardCharsets.UTF_8),
+                                new Point(shop.getX(), shop.getY()),
+                                shop.getId().toString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    return null;
+                });
+                total += shops.size();
+                if (shops.size() < GEO_REBUILD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            // 4.逐个类型去掉重建期间删除的商铺并RENAME为正式索引，已经没有商铺的类型删除正式索引
+            for (Long typeId : typeIds) {
+                stringRedisTemplate.execute(GEO_REBUILD_FINISH_SCRIPT, keys(typeId));
+            }
+            // 5.删除旧格式（shop:geo:typeId）的索引
+            Set<String> legacy = scanKeys(SHOP_GEO_KEY + "[0-9]*");
+            if (!legacy.isEmpty()) {
+                stringRedisTemplate.delete(legacy);
+            }
+            log.info("重建商铺GEO索引完成，类型数：{}，商铺数：{}", typeIds.size(), total);
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 创建重建标记，重建异常中断时标记会过期，修改不再写入临时索引
+     */
+    private void markRebuilding(Long typeId) {
+        stringRedisTemplate.opsForValue().set(
+                key(typeId) + SHOP_GEO_REBUILDING_SUFFIX, "1", SHOP_GEO_REBUILDING_TTL, TimeUnit.SECONDS);
+    }
+    private Set<String> scanKeys(String pattern) {
+        Set<String> keys = new HashSet<>();
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+            try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                while (cursor.hasNext()) {
+                    keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            }
+            return null;
+        });
+        return keys;
+    }
+}
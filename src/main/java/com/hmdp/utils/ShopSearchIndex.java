@@ -0,0 +1,365 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGED_CHANNEL;
+import static com.hmdp.utils.SystemConstants.GEO_REBUILD_BATCH_SIZE;
+import static com.hmdp.utils.SystemConstants.SEARCH_SCORE_WEIGHT;
+import static com.hmdp.utils.SystemConstants.SEARCH_SOLD_WEIGHT;
+import static com.hmdp.utils.SystemConstants.SEARCH_TEXT_WEIGHT;
+
+/**
+ * <p>
+ * 进程内的商铺名称倒排索引，替代 name LIKE '%keyword%' 的全表扫描：
+ * 1.商铺名称按单字和相邻两字（n-gram）建立倒排表，适合没有空格分词的中文名称
+ * 2.查询时对关键字的n-gram求交集，再校验名称确实包含关键字，与LIKE的结果一致
+ * 3.相关度 = 文本匹配（完全匹配 > 前缀匹配 > 包含，名称越短越好）+ 销量 + 评分
+ * 4.查询只用有界堆保留一页，不对全部命中排序
+ * 启动时在后台加载，商铺变更通过shop:changed通知所有节点增量更新
+ * </p>
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex {
+
+    /**
+     * 按相关度从高到低、id从小到大
+     */
+    private static final Comparator<Hit> HIT_ORDER =
+            Comparator.comparingDouble(Hit::getRelevance).reversed().thenComparingLong(Hit::getId);
+
+    private final boolean enabled;
+
+    private final ShopMapper shopMapper;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 商铺id -> 索引的文档
+     */
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+
+    /**
+     * n-gram -> 包含它的商铺id
+     */
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * 加载期间收到变更的商铺id，加载时跳过，以reload读到的已提交数据为准
+     */
+    private final Set<Long> changedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "shop-search-index-load");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShopSearchIndex(ShopMapper shopMapper, RedisMessageListenerContainer listenerContainer,
+                           @Value("${hmdp.shop.search-index:true}") boolean enabled) {
+        this.shopMapper = shopMapper;
+        this.listenerContainer = listenerContainer;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        // 1.先订阅变更，加载期间的变更不会丢失
+        listenerContainer.addMessageListener(
+                (message, pattern) -> reload(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SHOP_CHANGED_CHANNEL)
+        );
+        // 2.后台加载，加载完成前isReady()为false，由调用方查询数据库
+        loadExecutor.execute(() -> {
+            try {
+                load();
+            } catch (Exception e) {
+                log.error("加载商铺搜索索引异常", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        loadExecutor.shutdownNow();
+    }
+
+    /**
+     * 按主键分批加载 select id, name, score, sold from tb_shop where id > ? order by id limit ?
+     */
+    void load() {
+        long lastId = 0;
+        while (true) {
+            List<Shop> batch = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name", "score", "sold")
+                    .gt("id", lastId).orderByAsc("id").last("limit " + GEO_REBUILD_BATCH_SIZE));
+            // 与reload互斥，批量读到的可能是变更前的数据，不能覆盖reload的结果
+            synchronized (this) {
+                for (Shop shop : batch) {
+                    if (!changedWhileLoading.contains(shop.getId())) {
+                        add(shop);
+                    }
+                }
+            }
+            if (batch.size() < GEO_REBUILD_BATCH_SIZE) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+        synchronized (this) {
+            ready = true;
+            changedWhileLoading.clear();
+        }
+        log.info("商铺搜索索引加载完成，商铺数：{}，词项数：{}", docs.size(), postings.size());
+    }
+
+    /**
+     * 是否可以查询，未开启或还在加载时由调用方查询数据库
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询名称包含关键字的商铺中，排在游标之后的前limit个。
+     * 只在堆中保留limit个，不对全部命中排序，翻到第N页与第1页的代价相同
+     * @param after 上一页最后一条的位置(-相关度, id)，为null时从第一条开始
+     * @return 按相关度从高到低、id从小到大排序
+     */
+    public List<Hit> search(String keyword, ScrollCursor.Position after, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // 堆顶是当前排在最后的一条，新的命中排在它之前时替换
+        PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(limit, GEO_REBUILD_BATCH_SIZE) + 1, HIT_ORDER.reversed());
+        forEachMatch(query, doc -> {
+            double relevance = relevance(doc, query);
+            if (after != null && !after.isBefore(-relevance, doc.id)) {
+                return;
+            }
+            Hit hit = new Hit(doc.id, doc.name, relevance, doc.sold);
+            if (top.size() < limit) {
+                top.add(hit);
+            } else if (HIT_ORDER.compare(hit, top.peek()) < 0) {
+                top.poll();
+                top.add(hit);
+            }
+        });
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(HIT_ORDER);
+        return hits;
+    }
+
+    /**
+     * 搜索框的自动补全：以前缀开头的商铺名称，按销量排序
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String query = normalize(prefix);
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // 名称 -> 销量最高的商铺，只保留销量最高的limit个名称
+        Map<String, Doc> byName = new HashMap<>();
+        PriorityQueue<Doc> top = new PriorityQueue<>(limit + 1, Comparator.comparingLong(doc -> doc.sold));
+        forEachMatch(query, doc -> {
+            if (!doc.text.startsWith(query)) {
+                return;
+            }
+            Doc same = byName.get(doc.name);
+            if (same != null) {
+                if (same.sold >= doc.sold) {
+                    return;
+                }
+                top.remove(same);
+            } else if (top.size() == limit) {
+                if (top.peek().sold >= doc.sold) {
+                    return;
+                }
+                byName.remove(top.poll().name);
+            }
+            byName.put(doc.name, doc);
+            top.add(doc);
+        });
+        return top.stream()
+                .sorted(Comparator.comparingLong((Doc doc) -> doc.sold).reversed())
+                .map(doc -> doc.name)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 遍历名称包含关键字的商铺
+     */
+    private void forEachMatch(String query, Consumer<Doc> action) {
+        // 1.关键字的n-gram对应的倒排表，从最短的开始求交集
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : queryGrams(query)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        for (Long id : lists.get(0)) {
+            boolean all = true;
+            for (int i = 1; i < lists.size() && all; i++) {
+                all = lists.get(i).contains(id);
+            }
+            Doc doc = docs.get(id);
+            // 2.n-gram都命中不代表连续出现，校验名称包含关键字
+            if (all && doc != null && doc.text.contains(query)) {
+                action.accept(doc);
+            }
+        }
+    }
+
+    /**
+     * 重新加载商铺，shop:changed在数据库事务提交后发布，这里读到的是提交后的数据
+     */
+    private synchronized void reload(Long shopId) {
+        if (!ready) {
+            changedWhileLoading.add(shopId);
+        }
+        try {
+            Doc before = docs.get(shopId);
+            if (before != null) {
+                remove(before);
+            }
+            Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>()
+                    .select("id", "name", "score", "sold").eq("id", shopId));
+            if (shop != null) {
+                add(shop);
+            }
+        } catch (Exception e) {
+            log.error("更新商铺搜索索引异常，shopId：{}", shopId, e);
+        }
+    }
+
+    private void add(Shop shop) {
+        if (StrUtil.isBlank(shop.getName())) {
+            return;
+        }
+        Doc doc = new Doc(shop);
+        docs.put(doc.id, doc);
+        for (String gram : indexGrams(doc.text)) {
+            postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(doc.id);
+        }
+    }
+
+    private void remove(Doc doc) {
+        docs.remove(doc.id);
+        for (String gram : indexGrams(doc.text)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(doc.id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram, ids);
+                }
+            }
+        }
+    }
+
+    private static double relevance(Doc doc, String query) {
+        double text = doc.text.equals(query) ? 3 : doc.text.startsWith(query) ? 2 : 1;
+        text += (double) query.length() / doc.text.length();
+        return text * SEARCH_TEXT_WEIGHT
+                + Math.log10(1 + doc.sold) * SEARCH_SOLD_WEIGHT
+                + doc.score / 10.0 * SEARCH_SCORE_WEIGHT;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    /**
+     * 索引单字和相邻两字，单字关键字也能查询
+     */
+    private static Set<String> indexGrams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 关键字只需要相邻两字，只有一个字时使用单字
+     */
+    private static Set<String> queryGrams(String query) {
+        if (query.length() == 1) {
+            return Collections.singleton(query);
+        }
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < query.length(); i++) {
+            grams.add(query.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static class Doc {
+        private final long id;
+        private final String name;
+        private final String text;
+        private final long sold;
+        private final int score;
+
+        private Doc(Shop shop) {
+            this.id = shop.getId();
+            this.name = shop.getName();
+            this.text = normalize(shop.getName());
+            this.sold = shop.getSold() == null ? 0 : shop.getSold();
+            this.score = shop.getScore() == null ? 0 : shop.getScore();
+        }
+    }
+
+    @Getter
+    public static class Hit {
+        private final long id;
+        private final String name;
+        private final double relevance;
+        private final long sold;
+
+        private Hit(long id, String name, double relevance, long sold) {
+            this.id = id;
+            this.name = name;
+            this.relevance = relevance;
+            this.sold = sold;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.jwt.JWT;
+import cn.hutool.jwt.JWTPayload;
+import cn.hutool.jwt.signers.JWTSigner;
+import cn.hutool.jwt.signers.JWTSignerUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+
+/**
+ * <p>
+ * 签名token：token中带有UserDTO的字段，验签和过期判断都在本地完成，认证不访问Redis。
+ * 登录时签发有效期较短的access token和有效期较长的refresh token，二者属于同一个会话(sid)；
+ * 登出时把sid写入Redis吊销列表（带过期时间）并广播，各节点在本地维护吊销列表。
+ * 错过广播的节点在access token过期前仍会放行，刷新token时会再查询一次Redis中的吊销记录，
+ * 因此被吊销的会话最多再使用一个access token有效期
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.login.mode", havingValue = "signed")
+public class SignedTokenSessionStore implements SessionStore {
+
+    private static final String TYPE = "typ";
+    private static final String TYPE_ACCESS = "access";
+    private static final String TYPE_REFRESH = "refresh";
+    private static final String SESSION_ID = "sid";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final JWTSigner signer;
+
+    private final long accessTtlMillis;
+
+    private final long refreshTtlMillis;
+
+    /**
+     * 已吊销的会话id，value为吊销记录的过期时间
+     */
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    public SignedTokenSessionStore(StringRedisTemplate stringRedisTemplate,
+                                   RedisMessageListenerContainer listenerContainer,
+                                   @Value("${hmdp.login.signed.secret:}") String secret,
+                                   @Value("${hmdp.login.signed.access-ttl:15}") long accessTtlMinutes,
+                                   @Value("${hmdp.login.signed.refresh-ttl:7}") long refreshTtlDays) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        if (StrUtil.isBlank(secret)) {
+            log.warn("未配置hmdp.login.signed.secret，使用随机密钥，token只在本节点有效且重启后失效");
+            secret = RandomUtil.randomString(32);
+        }
+        this.signer = JWTSignerUtil.hs256(secret.getBytes(StandardCharsets.UTF_8));
+        this.accessTtlMillis = TimeUnit.MINUTES.toMillis(accessTtlMinutes);
+        this.refreshTtlMillis = TimeUnit.DAYS.toMillis(refreshTtlDays);
+    }
+
+    @PostConstruct
+    private void init() {
+        // 订阅吊销广播
+        listenerContainer.addMessageListener(
+                (message, pattern) -> revoked.put(new String(message.getBody(), StandardCharsets.UTF_8),
+                        System.currentTimeMillis() + refreshTtlMillis),
+                new ChannelTopic(LOGIN_REVOKE_CHANNEL)
+        );
+        // 加载已有的吊销记录
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            ScanOptions options = ScanOptions.scanOptions().match(LOGIN_REVOKED_KEY + "*").count(1000).build();
+            try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    revoked.put(key.substring(LOGIN_REVOKED_KEY.length()), System.currentTimeMillis() + refreshTtlMillis);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Object create(UserDTO user) {
+        String sessionId = UUID.randomUUID().toString(true);
+        Map<String, String> tokens = new HashMap<>(2);
+        tokens.put("token", sign(user, sessionId, TYPE_ACCESS, accessTtlMillis));
+        tokens.put("refreshToken", sign(user, sessionId, TYPE_REFRESH, refreshTtlMillis));
+        return tokens;
+    }
+
+    @Override
+    public UserDTO get(String token) {
+        JWT jwt = verify(token, TYPE_ACCESS);
+        return jwt == null ? null : toUser(jwt);
+    }
+
+    @Override
+    public void invalidate(String token) {
+        JWT jwt = verify(token, TYPE_ACCESS);
+        if (jwt == null) {
+            return;
+        }
+        String sessionId = Convert.toStr(jwt.getPayload(SESSION_ID));
+        // 吊销记录保留到refresh token过期
+        stringRedisTemplate.opsForValue().set(LOGIN_REVOKED_KEY + sessionId, "1", refreshTtlMillis, TimeUnit.MILLISECONDS);
+        revoked.put(sessionId, System.currentTimeMillis() + refreshTtlMillis);
+        stringRedisTemplate.convertAndSend(LOGIN_REVOKE_CHANNEL, sessionId);
+    }
+
+    @Override
+    public String refresh(String refreshToken) {
+        JWT jwt = verify(refreshToken, TYPE_REFRESH);
+        if (jwt == null) {
+            return null;
+        }
+        // 本地吊销列表可能错过了广播（断线重连、GC停顿），以Redis中的吊销记录为准
+        String sessionId = Convert.toStr(jwt.getPayload(SESSION_ID));
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(LOGIN_REVOKED_KEY + sessionId))) {
+            revoked.put(sessionId, System.currentTimeMillis() + refreshTtlMillis);
+            return null;
+        }
+        return sign(toUser(jwt), sessionId, TYPE_ACCESS, accessTtlMillis);
+    }
+
+    private String sign(UserDTO user, String sessionId, String type, long ttlMillis) {
+        return JWT.create()
+                .setPayload("id", user.getId())
+                .setPayload("nickName", user.getNickName())
+                .setPayload("icon", user.getIcon())
+                .setPayload(SESSION_ID, sessionId)
+                .setPayload(TYPE, type)
+                .setExpiresAt(new Date(System.currentTimeMillis() + ttlMillis))
+                .setSigner(signer)
+                .sign();
+    }
+
+    /**
+     * 验签，并判断类型、是否过期、是否已吊销
+     * @return 有效时返回解析后的token，否则返回null
+     */
+    private JWT verify(String token, String type) {
+        JWT jwt;
+        try {
+            jwt = JWT.of(token);
+            if (!jwt.setSigner(signer).verify()) {
+                return null;
+            }
+        } catch (Exception e) {
+            // 格式错误的token
+            return null;
+        }
+        if (!type.equals(jwt.getPayload(TYPE))) {
+            return null;
+        }
+        Long expiresAt = Convert.toLong(jwt.getPayload(JWTPayload.EXPIRES_AT));
+        if (expiresAt == null || TimeUnit.SECONDS.toMillis(expiresAt) < System.currentTimeMillis()) {
+            return null;
+        }
+        return isRevoked(Convert.toStr(jwt.getPayload(SESSION_ID))) ? null : jwt;
+    }
+
+    private boolean isRevoked(String sessionId) {
+        Long expireAt = revoked.get(sessionId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            // 会话的token都已过期，不再需要吊销记录
+            revoked.remove(sessionId);
+            return false;
+        }
+        return true;
+    }
+
+    private static UserDTO toUser(JWT jwt) {
+        UserDTO user = new UserDTO();
+        user.setId(Convert.toLong(jwt.getPayload("id")));
+        user.setNickName(Convert.toStr(jwt.getPayload("nickName")));
+        user.setIcon(Convert.toStr(jwt.getPayload("icon")));
+        return user;
+    }
+}
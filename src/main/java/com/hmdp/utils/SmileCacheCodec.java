@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * 基于Jackson Smile的二进制序列化，体积小、解析快，逻辑过期数据只需解析一遍
+ */
+public class SmileCacheCodec implements CacheCodec {
+
+    /**
+     * Smile格式的头部，用于区分二进制数据和JSON文本
+     */
+    private static final byte[] HEADER = {':', ')', '\n'};
+
+    private final ObjectMapper mapper = new ObjectMapper(new SmileFactory())
+            .registerModule(new JavaTimeModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    public static boolean isSmile(byte[] bytes) {
+        return bytes.length >= HEADER.length
+                && bytes[0] == HEADER[0] && bytes[1] == HEADER[1] && bytes[2] == HEADER[2];
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        try {
+            return mapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public <T> RedisData decodeLogical(byte[] bytes, Class<T> type) {
+        // 流式解析，expireTime和data在一次遍历中直接绑定到目标类型
+        try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("逻辑过期数据格式错误");
+            }
+            RedisData redisData = new RedisData();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("expireTime".equals(field)) {
+                    redisData.setExpireTime(mapper.readValue(parser, LocalDateTime.class));
+                } else if ("data".equals(field)) {
+                    redisData.setData(mapper.readValue(parser, type));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return redisData;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -6,4 +6,26 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int LOCAL_CACHE_CAPACITY = 1024;
+    public static final long LOCAL_CACHE_TTL = 60 * 1000L;
+    public static final int TOKEN_CACHE_CAPACITY = 10000;
+    public static final long TOKEN_CACHE_TTL = 30 * 1000L;
+    public static final long TOKEN_REFRESH_INTERVAL = 5 * 60 * 1000L;
+    public static final int FEED_PAGE_SIZE = 2;
+    public static final int FEED_PUSH_BATCH_SIZE = 1000;
+    public static final int LIKE_FLUSH_BATCH_SIZE = 500;
+    public static final int BLOG_HOT_COMMENT_WEIGHT = 2;
+    public static final long BLOG_HOT_EPOCH = 1640995200L;
+    public static final int GEO_CELL_PRECISION = 100;
+    public static final int GEO_CELL_MARGIN = 800;
+    public static final int GEO_MIN_RADIUS = 5000;
+    public static final int GEO_MAX_RADIUS = 50000;
+    public static final int GEO_MIN_RESULTS = 50;
+    public static final int GEO_MAX_RESULTS = 500;
+    public static final int GEO_REBUILD_BATCH_SIZE = 1000;
+    public static final int LOCAL_GRID_PRECISION = 20;
+    public static final double SEARCH_TEXT_WEIGHT = 10;
+    public static final double SEARCH_SOLD_WEIGHT = 1;
+    public static final double SEARCH_SCORE_WEIGHT = 0.5;
+    public static final int SEARCH_SUGGEST_SIZE = 10;
 }
@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.lang.UUID;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+import static com.hmdp.utils.SystemConstants.TOKEN_CACHE_CAPACITY;
+import static com.hmdp.utils.SystemConstants.TOKEN_CACHE_TTL;
+import static com.hmdp.utils.SystemConstants.TOKEN_REFRESH_INTERVAL;
+
+/**
+ * <p>
+ * 登录会话的本地缓存：token对应的用户在本地缓存一小段时间，
+ * token有效期的刷新对每个token限频，由后台线程通过pipeline批量EXPIRE，
+ * 登出时广播失效消息，删除所有节点的本地缓存
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.login.mode", havingValue = "redis", matchIfMissing = true)
+public class TokenSessionCache implements SessionStore {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LRUCache<String, UserDTO> localCache = CacheUtil.newLRUCache(TOKEN_CACHE_CAPACITY, TOKEN_CACHE_TTL);
+
+    /**
+     * token上次刷新有效期的时间
+     */
+    private final Map<String, Long> lastRefresh = new ConcurrentHashMap<>();
+
+    /**
+     * 等待批量刷新有效期的token
+     */
+    private final Set<String> pendingRefresh = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    public TokenSessionCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        // 订阅登出广播
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_INVALIDATE_CHANNEL)
+        );
+        refreshExecutor.scheduleWithFixedDelay(this::flushRefresh, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        refreshExecutor.shutdownNow();
+        flushRefresh();
+    }
+
+    @Override
+    public Object create(UserDTO user) {
+        //随机生成token，作为登录令牌
+        String token = UUID.randomUUID().toString(true);
+        //将userDTO转换成Map
+        Map<String, Object> userMap = BeanUtil.beanToMap(user, new HashMap<>(),
+                CopyOptions.create().setIgnoreNullValue(true).setFieldValueEditor(
+                        (fieldName, fieldValue) -> fieldValue.toString()
+                ));
+        //保存用户信息
+        String tokenKey = LOGIN_USER_KEY + token;
+        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
+        //设置token有效期
+        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        return token;
+    }
+
+    /**
+     * 获取token对应的用户，并按需刷新token有效期
+     * @return 用户，token不存在或已过期时返回null
+     */
+    @Override
+    public UserDTO get(String token) {
+        UserDTO user = localCache.get(token, false);
+        if (user == null) {
+            Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(LOGIN_USER_KEY + token);
+            if (userMap.isEmpty()) {
+                //用户不存在，如token过期
+                return null;
+            }
+            user = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+            localCache.put(token, user);
+        }
+        touch(token);
+        return user;
+    }
+
+    /**
+     * 登出：删除token并通知所有节点
+     */
+    @Override
+    public void invalidate(String token) {
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        evict(token);
+        stringRedisTemplate.convertAndSend(LOGIN_INVALIDATE_CHANNEL, token);
+    }
+
+    /**
+     * Redis会话在每次访问时延长有效期，不需要refresh token
+     */
+    @Override
+    public String refresh(String refreshToken) {
+        return null;
+    }
+
+    private void evict(String token) {
+        localCache.remove(token);
+        lastRefresh.remove(token);
+        pendingRefresh.remove(token);
+    }
+
+    /**
+     * 每个token每TOKEN_REFRESH_INTERVAL最多刷新一次有效期
+     */
+    private void touch(String token) {
+        long now = System.currentTimeMillis();
+        Long last = lastRefresh.get(token);
+        if (last != null && now - last < TOKEN_REFRESH_INTERVAL) {
+            return;
+        }
+        lastRefresh.put(token, now);
+        pendingRefresh.add(token);
+    }
+
+    private void flushRefresh() {
+        try {
+            if (pendingRefresh.isEmpty()) {
+                return;
+            }
+            List<String> tokens = new ArrayList<>(pendingRefresh);
+            pendingRefresh.removeAll(tokens);
+            //一次pipeline批量刷新有效期
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                long seconds = TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+                for (String token : tokens) {
+                    connection.keyCommands().expire((LOGIN_USER_KEY + token).getBytes(StandardCharsets.UTF_8), seconds);
+                }
+                return null;
+            });
+            // 清理已经不再刷新的token，超过登录有效期的记录没有意义
+            long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+            lastRefresh.values().removeIf(last -> last < expireBefore);
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会停止
+            log.error("刷新token有效期异常", e);
+        }
+    }
+}
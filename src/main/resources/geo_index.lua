@@ -0,0 +1,32 @@
+-- 维护一个类型的商铺GEO索引，正在重建时同时写入临时索引，避免重建完成后丢失这段时间的修改
+-- 1.参数列表
+-- 1.1.KEYS：正式索引、临时索引、删除记录、重建标记，key中带有相同的hash tag，集群下位于同一个slot
+local live = KEYS[1]
+local staging = KEYS[2]
+local deleted = KEYS[3]
+local rebuilding = KEYS[4]
+-- 1.2.商铺id、经度、纬度、是否删除
+local shopId = ARGV[1]
+local x = ARGV[2]
+local y = ARGV[3]
+local remove = ARGV[4] == '1'
+
+-- 2.重建标记在重建开始前创建，存在说明正在重建
+local isRebuilding = redis.call('exists', rebuilding) == 1
+if remove then
+    -- 3.删除 ZREM key shopId
+    redis.call('zrem', live, shopId)
+    if isRebuilding then
+        -- 3.1.重建可能在删除前已经读到了这个商铺，记录下来在替换前从临时索引删除
+        redis.call('zrem', staging, shopId)
+        redis.call('sadd', deleted, shopId)
+    end
+else
+    -- 4.添加或修改坐标 GEOADD key x y shopId
+    redis.call('geoadd', live, x, y, shopId)
+    if isRebuilding then
+        redis.call('geoadd', staging, x, y, shopId)
+        redis.call('srem', deleted, shopId)
+    end
+end
+return 0
@@ -0,0 +1,21 @@
+-- 完成一个类型的GEO索引重建，与geo_index.lua互斥执行，不会丢失重建期间的修改
+-- 1.参数列表：正式索引、临时索引、删除记录、重建标记，key中带有相同的hash tag
+local live = KEYS[1]
+local staging = KEYS[2]
+local deleted = KEYS[3]
+local rebuilding = KEYS[4]
+
+-- 2.从临时索引中删除重建期间被删除的商铺
+local members = redis.call('smembers', deleted)
+for i = 1, #members do
+    redis.call('zrem', staging, members[i])
+end
+-- 3.替换正式索引，这个类型已经没有商铺时删除正式索引
+if redis.call('exists', staging) == 1 then
+    redis.call('rename', staging, live)
+else
+    redis.call('del', live)
+end
+-- 4.清理删除记录和重建标记，之后的修改只写正式索引
+redis.call('del', deleted, rebuilding)
+return 0
@@ -0,0 +1,41 @@
+-- 点赞/取消点赞：切换点赞zset中的成员，同时累计待写回数据库的增量
+-- 1.参数列表
+-- 1.1.点赞zset、点赞数hash、增量hash、热度排行zset
+local likedKey = KEYS[1]
+local countKey = KEYS[2]
+local deltaKey = KEYS[3]
+local hotKey = KEYS[4]
+-- 1.2.用户id、笔记id、点赞时间
+local userId = ARGV[1]
+local blogId = ARGV[2]
+local now = ARGV[3]
+-- 1.3.热度的时间基数、评论数 * 权重、排行保留的笔记数
+local hotBase = tonumber(ARGV[4])
+local commentWeight = tonumber(ARGV[5])
+local hotSize = tonumber(ARGV[6])
+
+-- 2.已点赞则取消，否则点赞
+local delta
+if redis.call('zscore', likedKey, userId) then
+    redis.call('zrem', likedKey, userId)
+    delta = -1
+else
+    redis.call('zadd', likedKey, now, userId)
+    delta = 1
+end
+
+-- 3.累计增量，由定时任务批量写回数据库
+redis.call('hincrby', deltaKey, blogId, delta)
+-- 4.点赞数已加载到Redis时同步修改，未加载的在读取时用数据库的值加上增量初始化
+if redis.call('hexists', countKey, blogId) == 1 then
+    redis.call('hincrby', countKey, blogId, delta)
+end
+
+-- 5.更新热度：log10(点赞数 + 评论数 * 权重) + 时间基数，只保留排名靠前的hotSize篇
+local count = redis.call('hget', countKey, blogId)
+if count then
+    local weight = math.max(tonumber(count) + commentWeight, 1)
+    redis.call('zadd', hotKey, math.log10(weight) + hotBase, blogId)
+    redis.call('zremrangebyrank', hotKey, 0, -(hotSize + 1))
+end
+return delta
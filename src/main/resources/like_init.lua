@@ -0,0 +1,30 @@
+-- 初始化未加载到Redis的点赞数：数据库中的点赞数 + 增量 + 正在写回的快照，增量的读取与HSETNX是原子的
+-- 1.参数列表
+-- 1.1.点赞数hash、增量hash、正在写回的快照hash、写回代数
+local countKey = KEYS[1]
+local deltaKey = KEYS[2]
+local flushingKey = KEYS[3]
+local genKey = KEYS[4]
+-- 1.2.读取数据库之前的写回代数，之后是 笔记id1, 数据库点赞数1, 笔记id2, 数据库点赞数2 ...
+local expectedGen = ARGV[1]
+
+-- 2.写回代数在每批写回数据库前后各加1：奇数表示正在写回（数据库已更新但快照还没删除），
+-- 与读取数据库前不同表示读取之后写回过，这两种情况数据库的值与增量对不上，只计算不保存
+local gen = redis.call('get', genKey) or '0'
+local consistent = gen == expectedGen and tonumber(gen) % 2 == 0
+
+local result = {}
+for i = 2, #ARGV, 2 do
+    local blogId = ARGV[i]
+    local count = redis.call('hget', countKey, blogId)
+    if not count then
+        count = tonumber(ARGV[i + 1])
+                + tonumber(redis.call('hget', deltaKey, blogId) or '0')
+                + tonumber(redis.call('hget', flushingKey, blogId) or '0')
+        if consistent then
+            redis.call('hset', countKey, blogId, count)
+        end
+    end
+    table.insert(result, tostring(count))
+end
+return result
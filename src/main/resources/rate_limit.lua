@@ -0,0 +1,35 @@
+-- 滑动窗口限流：当前窗口计数 + 上一个窗口计数 * 上一个窗口仍在滑动窗口内的比例
+-- 所有维度（用户、IP、全局）都未超限时才同时计数，返回0；否则返回第一个超限维度的序号
+-- 使用Redis服务器时间，TIME之后还有写命令，需要按命令复制（Redis 5之前默认按脚本复制）
+redis.replicate_commands()
+
+-- 1.参数列表
+-- 1.1.窗口长度（秒）
+local window = tonumber(ARGV[1])
+-- 1.2.本次请求数，本地预聚合时一次提交多个
+local cost = tonumber(ARGV[2])
+-- 1.3.ARGV[i + 2]为KEYS[i]的上限
+
+-- 2.当前窗口
+local time = redis.call('time')
+local now = tonumber(time[1]) + tonumber(time[2]) / 1000000
+local current = math.floor(now / window)
+local weight = 1 - (now - current * window) / window
+
+-- 3.判断是否超限
+for i, key in ipairs(KEYS) do
+    local limit = tonumber(ARGV[i + 2])
+    local count = tonumber(redis.call('get', key .. ':' .. current) or '0')
+    local previous = tonumber(redis.call('get', key .. ':' .. (current - 1)) or '0')
+    if (previous * weight + count + cost > limit) then
+        return i
+    end
+end
+
+-- 4.计数
+for _, key in ipairs(KEYS) do
+    local counter = key .. ':' .. current
+    redis.call('incrby', counter, cost)
+    redis.call('expire', counter, window * 2)
+end
+return 0
@@ -0,0 +1,31 @@
+-- 本地预聚合模式的同步：提交各节点累计的请求数，返回每个key当前的滑动窗口计数
+-- 使用Redis服务器时间，TIME之后还有写命令，需要按命令复制（Redis 5之前默认按脚本复制）
+redis.replicate_commands()
+
+-- 1.参数列表
+-- 1.1.窗口长度（秒）
+local window = tonumber(ARGV[1])
+-- 1.2.ARGV[i + 1]为KEYS[i]在本节点累计、尚未提交的请求数
+
+-- 2.当前窗口
+local time = redis.call('time')
+local now = tonumber(time[1]) + tonumber(time[2]) / 1000000
+local current = math.floor(now / window)
+local weight = 1 - (now - current * window) / window
+
+-- 3.提交并返回计数
+local result = {}
+for i, key in ipairs(KEYS) do
+    local counter = key .. ':' .. current
+    local delta = tonumber(ARGV[i + 1])
+    local count
+    if (delta > 0) then
+        count = redis.call('incrby', counter, delta)
+        redis.call('expire', counter, window * 2)
+    else
+        count = tonumber(redis.call('get', counter) or '0')
+    end
+    local previous = tonumber(redis.call('get', key .. ':' .. (current - 1)) or '0')
+    result[i] = math.floor(previous * weight + count)
+end
+return result
@@ -1,3 +1,6 @@
+-- 使用Redis服务器时间判断秒杀时间，TIME之后还有写命令，需要按命令复制（Redis 5之前默认按脚本复制）
+redis.replicate_commands()
+
 -- 1.参数列表
 -- 1.1.优惠券id
 local voucherId = ARGV[1]
@@ -11,10 +14,31 @@ local orderId = ARGV[3]
 local stockKey = 'seckill:stock:' .. voucherId
 -- 2.2.订单key
 local orderKey = 'seckill:order:' .. voucherId
+-- 2.3.秒杀时间key，begin、end为毫秒时间戳
+local timeKey = 'seckill:time:' .. voucherId
 
 -- 3.脚本业务
+-- 3.0.判断是否在秒杀时间内（没有预热时间窗口的旧数据不做判断）
+local window = redis.call('hmget', timeKey, 'begin', 'end')
+if (window[1] and window[2]) then
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    if (now < tonumber(window[1])) then
+        -- 秒杀尚未开始，返回3
+        return 3
+    end
+    if (now > tonumber(window[2])) then
+        -- 秒杀已经结束，返回4
+        return 4
+    end
+end
 -- 3.1.判断库存是否充足 get stockKey
-if(tonumber(redis.call('get', stockKey)) <= 0) then
+local stock = redis.call('get', stockKey)
+if (not stock) then
+    -- 没有库存key（还没有预热），返回5
+    return 5
+end
+if(tonumber(stock) <= 0) then
     -- 3.2.库存不足，返回1
     return 1
 end
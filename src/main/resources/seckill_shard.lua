@@ -0,0 +1,66 @@
+-- 分片库存的秒杀资格判断，每次调用只访问同一个分片（同一个hash tag）的key
+-- 使用Redis服务器时间判断秒杀时间，TIME之后还有写命令，需要按命令复制（Redis 5之前默认按脚本复制）
+redis.replicate_commands()
+
+-- 1.参数列表
+-- 1.1.分片库存key seckill:stock:{voucherId:shard}
+local stockKey = KEYS[1]
+-- 1.2.分片下单用户key seckill:order:{voucherId:shard}
+local orderKey = KEYS[2]
+-- 1.3.分片秒杀时间key seckill:time:{voucherId:shard}，begin、end为毫秒时间戳
+local timeKey = KEYS[3]
+-- 1.4.用户id
+local userId = ARGV[1]
+-- 1.5.操作：home(用户所属分片)、sibling(兄弟分片)、release(释放预占)、refund(归还库存)
+local op = ARGV[2]
+
+-- 2.释放home分片中的下单预占（所有分片都没有库存，或发送订单消息失败时）
+if (op == 'release') then
+    redis.call('srem', orderKey, userId)
+    return 0
+end
+-- 2.1.归还扣减的库存（发送订单消息失败时，在扣减库存的分片上执行）
+if (op == 'refund') then
+    if (redis.call('exists', stockKey) == 1) then
+        redis.call('incrby', stockKey, 1)
+    end
+    return 0
+end
+
+-- 3.判断是否在秒杀时间内（没有预热时间窗口的旧数据不做判断）
+local window = redis.call('hmget', timeKey, 'begin', 'end')
+if (window[1] and window[2]) then
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    if (now < tonumber(window[1])) then
+        -- 秒杀尚未开始，返回3
+        return 3
+    end
+    if (now > tonumber(window[2])) then
+        -- 秒杀已经结束，返回4
+        return 4
+    end
+end
+
+-- 4.没有库存key（还没有预热），返回5，home分片不占位
+local stock = redis.call('get', stockKey)
+if (not stock) then
+    return 5
+end
+
+-- 5.home分片负责一人一单：用户固定落在同一个分片，判重与占位是原子的
+if (op == 'home') then
+    if (redis.call('sismember', orderKey, userId) == 1) then
+        -- 重复下单，返回2
+        return 2
+    end
+    redis.call('sadd', orderKey, userId)
+end
+
+-- 6.扣减当前分片的库存
+if (tonumber(stock) <= 0) then
+    -- 当前分片库存不足，返回1（home分片已预占，由调用方尝试兄弟分片或释放）
+    return 1
+end
+redis.call('incrby', stockKey, -1)
+return 0
@@ -0,0 +1,151 @@
+package com.hmdp.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * like.lua、like_init.lua与写回流程的增量计算，在嵌入式Redis上执行真实的脚本
+ */
+class LikeScriptTest {
+
+    private static final String PREFIX = "test:like:";
+    private static final String LIKED_KEY = PREFIX + "liked:1";
+    private static final String COUNT_KEY = PREFIX + "count";
+    private static final String DELTA_KEY = PREFIX + "delta";
+    private static final String FLUSHING_KEY = PREFIX + "flushing";
+    private static final String GEN_KEY = PREFIX + "gen";
+    private static final String HOT_KEY = PREFIX + "hot";
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT = new DefaultRedisScript<>();
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKE_INIT_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        LIKE_INIT_SCRIPT.setLocation(new ClassPathResource("like_init.lua"));
+        LIKE_INIT_SCRIPT.setResultType(List.class);
+    }
+
+    private static RedisServer server;
+
+    private static LettuceConnectionFactory factory;
+
+    private static StringRedisTemplate redis;
+
+    @BeforeAll
+    static void start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        factory = new LettuceConnectionFactory("localhost", port);
+        factory.afterPropertiesSet();
+        redis = new StringRedisTemplate(factory);
+        redis.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        if (factory != null) {
+            factory.destroy();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @BeforeEach
+    void clean() {
+        redis.delete(Arrays.asList(LIKED_KEY, COUNT_KEY, DELTA_KEY, FLUSHING_KEY, GEN_KEY, HOT_KEY));
+    }
+
+    private long toggle(String userId) {
+        return redis.execute(LIKE_SCRIPT, Arrays.asList(LIKED_KEY, COUNT_KEY, DELTA_KEY, HOT_KEY),
+                userId, "1", String.valueOf(System.currentTimeMillis()), "0", "0", "10");
+    }
+
+    private long init(String expectedGen, int dbLiked) {
+        List<?> result = redis.execute(LIKE_INIT_SCRIPT, Arrays.asList(COUNT_KEY, DELTA_KEY, FLUSHING_KEY, GEN_KEY),
+                expectedGen, "1", String.valueOf(dbLiked));
+        return Long.parseLong(result.get(0).toString());
+    }
+
+    private Object hget(String key) {
+        return redis.opsForHash().get(key, "1");
+    }
+
+    @Test
+    void toggleAccumulatesDeltaWithoutLoadedCount() {
+        assertEquals(1, toggle("100"));
+        assertEquals(1, toggle("101"));
+        assertEquals(-1, toggle("100"));
+        assertEquals("1", hget(DELTA_KEY));
+        // 点赞数未加载时不写入，读取时再初始化
+        assertNull(hget(COUNT_KEY));
+    }
+
+    @Test
+    void initAddsDeltaAndFlushingSnapshot() {
+        toggle("100");
+        redis.opsForHash().put(FLUSHING_KEY, "1", "2");
+        assertEquals(8, init("0", 5));
+        assertEquals("8", hget(COUNT_KEY));
+        // 加载后点赞同时修改点赞数
+        toggle("101");
+        assertEquals("9", hget(COUNT_KEY));
+        assertEquals("2", hget(DELTA_KEY));
+    }
+
+    @Test
+    void initDoesNotStoreWhileFlushing() {
+        redis.opsForHash().put(FLUSHING_KEY, "1", "2");
+        // 代数为奇数：数据库已加上快照但快照还没删除
+        redis.opsForValue().set(GEN_KEY, "1");
+        assertEquals(7, init("1", 5));
+        assertFalse(redis.opsForHash().hasKey(COUNT_KEY, "1"));
+    }
+
+    @Test
+    void initDoesNotStoreWhenFlushedAfterDbRead() {
+        // 读取数据库时代数为0，之后完成了一批写回
+        redis.opsForValue().set(GEN_KEY, "2");
+        assertEquals(5, init("0", 5));
+        assertFalse(redis.opsForHash().hasKey(COUNT_KEY, "1"));
+    }
+
+    @Test
+    void flushKeepsTotalConsistent() {
+        // 数据库5，点赞2次后写回：快照 -> 代数加1 -> 数据库加增量 -> 删除快照 -> 代数加1
+        int db = 5;
+        toggle("100");
+        toggle("101");
+        redis.rename(DELTA_KEY, FLUSHING_KEY);
+        toggle("102");
+        redis.opsForValue().increment(GEN_KEY);
+        db += Integer.parseInt(hget(FLUSHING_KEY).toString());
+        redis.opsForHash().delete(FLUSHING_KEY, "1");
+        redis.opsForValue().increment(GEN_KEY);
+        // 写回后读取：数据库7 + 新的增量1
+        assertEquals(8, init(redis.opsForValue().get(GEN_KEY), db));
+        assertEquals("8", hget(COUNT_KEY));
+    }
+}
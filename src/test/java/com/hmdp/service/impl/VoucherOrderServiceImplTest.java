@@ -0,0 +1,110 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillScripts;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VoucherOrderServiceImplTest {
+
+    private static final Long VOUCHER_ID = 10L;
+
+    /**
+     * 用户2在2个分片中属于0号分片
+     */
+    private static final Long USER_ID = 2L;
+
+    private final VoucherOrderServiceImpl service = new VoucherOrderServiceImpl();
+
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+
+    private final SeckillAdmission seckillAdmission = mock(SeckillAdmission.class);
+
+    @SuppressWarnings("unchecked")
+    private final StreamOperations<String, Object, Object> streamOps = mock(StreamOperations.class);
+
+    /**
+     * 执行过的分片脚本：库存key + 操作
+     */
+    private final List<String> calls = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisIdWorker redisIdWorker = mock(RedisIdWorker.class);
+        when(redisIdWorker.nextId("order")).thenReturn(42L);
+        when(seckillAdmission.stockShards(VOUCHER_ID)).thenReturn(2);
+        when(seckillAdmission.tryAcquire(VOUCHER_ID, 2)).thenReturn(true);
+        // home分片库存不足，兄弟分片扣减成功
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any())).thenAnswer(invocation -> {
+            List<String> keys = invocation.getArgument(1);
+            String op = invocation.getArgument(3);
+            calls.add(keys.get(0) + " " + op);
+            return "home".equals(op) ? 1L : 0L;
+        });
+        when(stringRedisTemplate.opsForStream()).thenReturn(streamOps);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(service, "seckillAdmission", seckillAdmission);
+        ReflectionTestUtils.setField(service, "redisIdWorker", redisIdWorker);
+        UserDTO user = new UserDTO();
+        user.setId(USER_ID);
+        UserHolder.saveUser(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    private static String shardStock(int shard) {
+        return SECKILL_STOCK_KEY + SeckillScripts.shardTag(VOUCHER_ID, shard);
+    }
+
+    @Test
+    void sendsOrderAfterSiblingShardGrantsStock() {
+        Result result = service.seckillVoucher(VOUCHER_ID);
+        assertTrue(result.getSuccess());
+        assertEquals(42L, result.getData());
+        assertEquals(Arrays.asList(shardStock(0) + " home", shardStock(1) + " sibling"), calls);
+        verify(streamOps).add(anyString(), anyMap());
+    }
+
+    @Test
+    void compensatesGrantingShardWhenOrderMessageFails() {
+        doThrow(new RedisSystemException("XADD failed", null)).when(streamOps).add(anyString(), anyMap());
+        Result result = service.seckillVoucher(VOUCHER_ID);
+        assertFalse(result.getSuccess());
+        // 库存归还到扣减的1号分片，占位从home分片释放
+        assertEquals(Arrays.asList(
+                shardStock(0) + " home", shardStock(1) + " sibling",
+                shardStock(1) + " refund", shardStock(0) + " release"), calls);
+        verify(seckillAdmission).release(VOUCHER_ID);
+    }
+}
@@ -0,0 +1,102 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisIdWorkerTest {
+
+    private static final long SEQUENCE_MASK = (1L << 32) - 1;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    private final ValueOperations<String, String> ops = mockValueOperations();
+
+    private final StringRedisTemplate stringRedisTemplate = mockTemplate();
+
+    @SuppressWarnings("unchecked")
+    private ValueOperations<String, String> mockValueOperations() {
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        // 模拟INCRBY，返回增长后的值
+        when(ops.increment(anyString(), anyLong())).thenAnswer(invocation -> counter.addAndGet(invocation.getArgument(1)));
+        return ops;
+    }
+
+    private StringRedisTemplate mockTemplate() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        when(template.opsForValue()).thenReturn(ops);
+        return template;
+    }
+
+    @Test
+    void rejectsNonPositiveSegmentSize() {
+        assertThrows(IllegalArgumentException.class, () -> new RedisIdWorker(stringRedisTemplate, 0));
+    }
+
+    @Test
+    void segmentSizeOneIncrementsPerId() {
+        RedisIdWorker worker = new RedisIdWorker(stringRedisTemplate, 1);
+        assertEquals(1, worker.nextId("order") & SEQUENCE_MASK);
+        assertEquals(2, worker.nextId("order") & SEQUENCE_MASK);
+        verify(ops, times(2)).increment(anyString(), eq(1L));
+    }
+
+    @Test
+    void sequencesAreContiguousAcrossSegments() {
+        // 号段长度10，发放35个ID需要跨越多个号段，序列号连续且不重复
+        RedisIdWorker worker = new RedisIdWorker(stringRedisTemplate, 10);
+        for (long expected = 1; expected <= 35; expected++) {
+            assertEquals(expected, worker.nextId("order") & SEQUENCE_MASK);
+        }
+        // 每个号段只访问一次Redis，预取的号段可能多申请一个
+        verify(ops, atLeast(4)).increment(anyString(), anyLong());
+        assertTrue(counter.get() >= 40 && counter.get() <= 50, "allocated " + counter.get());
+    }
+
+    @Test
+    void keepsIssuingAfterShutdown() {
+        // 关闭后不能再异步预取，号段用尽时同步申请
+        RedisIdWorker worker = new RedisIdWorker(stringRedisTemplate, 5);
+        ReflectionTestUtils.invokeMethod(worker, "destroy");
+        for (long expected = 1; expected <= 12; expected++) {
+            assertEquals(expected, worker.nextId("order") & SEQUENCE_MASK);
+        }
+    }
+
+    @Test
+    void concurrentCallersNeverShareSequence() throws InterruptedException {
+        RedisIdWorker worker = new RedisIdWorker(stringRedisTemplate, 50);
+        Set<Long> ids = Collections.synchronizedSet(new HashSet<>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; j++) {
+                    ids.add(worker.nextId("order") & SEQUENCE_MASK);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, ids.size());
+    }
+}
@@ -0,0 +1,75 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.CursorResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScrollCursorTest {
+
+    @Test
+    void encodeAndDecodeId() {
+        String cursor = ScrollCursor.encode(123L);
+        assertEquals(123L, ScrollCursor.decode(cursor));
+        assertFalse(ScrollCursor.isPosition(cursor));
+    }
+
+    @Test
+    void blankCursorMeansFirstPage() {
+        assertNull(ScrollCursor.decode(null));
+        assertNull(ScrollCursor.decode(""));
+        assertNull(ScrollCursor.decodePosition(" "));
+        assertFalse(ScrollCursor.isPosition(null));
+    }
+
+    @Test
+    void encodeAndDecodePosition() {
+        String cursor = ScrollCursor.encode(-12.5, 7L);
+        ScrollCursor.Position position = ScrollCursor.decodePosition(cursor);
+        assertEquals(-12.5, position.getSortKey());
+        assertEquals(7L, position.getId());
+        assertTrue(ScrollCursor.isPosition(cursor));
+    }
+
+    @Test
+    void rejectsCursorOfOtherType() {
+        String idCursor = ScrollCursor.encode(1L);
+        String positionCursor = ScrollCursor.encode(1.0, 1L);
+        assertThrows(IllegalArgumentException.class, () -> ScrollCursor.decodePosition(idCursor));
+        assertThrows(IllegalArgumentException.class, () -> ScrollCursor.decode(positionCursor));
+    }
+
+    @Test
+    void positionOrdersBySortKeyThenId() {
+        ScrollCursor.Position position = new ScrollCursor.Position(1.0, 5L);
+        assertTrue(position.isBefore(2.0, 1L));
+        assertTrue(position.isBefore(1.0, 6L));
+        assertFalse(position.isBefore(1.0, 5L));
+        assertFalse(position.isBefore(1.0, 4L));
+        assertFalse(position.isBefore(0.5, 9L));
+    }
+
+    @Test
+    void ofReturnsCursorOnlyWhenMoreRowsExist() {
+        // 多查询的一条不返回，游标指向本页最后一条
+        CursorResult full = ScrollCursor.of(Arrays.asList(1L, 2L, 3L), 2, Function.identity());
+        assertEquals(Arrays.asList(1L, 2L), full.getList());
+        assertEquals(2L, ScrollCursor.decode(full.getCursor()));
+
+        CursorResult last = ScrollCursor.of(Arrays.asList(1L, 2L), 2, Function.identity());
+        assertEquals(Arrays.asList(1L, 2L), last.getList());
+        assertNull(last.getCursor());
+
+        CursorResult empty = ScrollCursor.of(Collections.<Long>emptyList(), 2, Function.identity());
+        assertTrue(empty.getList().isEmpty());
+        assertNull(empty.getCursor());
+    }
+}
@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeckillScriptsTest {
+
+    @Test
+    void homeShardIsStableAndInRange() {
+        for (long userId = -1000; userId <= 1000; userId++) {
+            int shard = SeckillScripts.homeShard(userId, 8);
+            assertTrue(shard >= 0 && shard < 8, "userId " + userId + " -> " + shard);
+            assertEquals(shard, SeckillScripts.homeShard(userId, 8));
+        }
+    }
+
+    @Test
+    void homeShardHandlesNegativeHashCode() {
+        // Long.hashCode为负数时，取模结果也不能为负数
+        assertTrue(Long.valueOf(Long.MIN_VALUE + 1).hashCode() < 0);
+        int shard = SeckillScripts.homeShard(Long.MIN_VALUE + 1, 4);
+        assertTrue(shard >= 0 && shard < 4);
+    }
+
+    @Test
+    void singleShardAlwaysZero() {
+        assertEquals(0, SeckillScripts.homeShard(42L, 1));
+        assertEquals(0, SeckillScripts.homeShard(Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    void homeShardSpreadsUsers() {
+        int[] counts = new int[4];
+        for (long userId = 1; userId <= 4000; userId++) {
+            counts[SeckillScripts.homeShard(userId, 4)]++;
+        }
+        for (int count : counts) {
+            assertEquals(1000, count);
+        }
+    }
+}
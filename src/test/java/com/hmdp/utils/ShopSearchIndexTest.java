@@ -0,0 +1,110 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShopSearchIndexTest {
+
+    private ShopSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        ShopMapper shopMapper = mock(ShopMapper.class);
+        when(shopMapper.selectList(any())).thenReturn(Arrays.asList(
+                shop(1L, "海底捞火锅店", 9000, 45),
+                shop(2L, "火锅", 10, 30),
+                shop(3L, "老北京火锅", 500, 40),
+                shop(4L, "火星锅盔", 100000, 50),
+                shop(5L, "小火锅", 500, 40),
+                shop(6L, "火锅城", 500, 40)
+        ));
+        index = new ShopSearchIndex(shopMapper, mock(RedisMessageListenerContainer.class), true);
+        assertFalse(index.isReady());
+        index.load();
+    }
+
+    private static Shop shop(Long id, String name, int sold, int score) {
+        return new Shop().setId(id).setName(name).setSold(sold).setScore(score);
+    }
+
+    private List<Long> ids(String keyword) {
+        return index.search(keyword, null, 100).stream().map(ShopSearchIndex.Hit::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void matchesLikeSemantics() {
+        assertTrue(index.isReady());
+        // 火星锅盔包含"火"和"锅"但不包含"火锅"，与LIKE '%火锅%'一致
+        assertFalse(ids("火锅").contains(4L));
+        assertEquals(Arrays.asList(4L), ids("锅盔"));
+        assertTrue(ids("不存在").isEmpty());
+        assertTrue(ids(" ").isEmpty());
+    }
+
+    @Test
+    void ranksExactThenPrefixThenContains() {
+        List<Long> ids = ids("火锅");
+        // 完全匹配 > 前缀匹配 > 包含，即使包含匹配的销量更高
+        assertEquals(2L, ids.get(0));
+        assertEquals(6L, ids.get(1));
+        // 同为包含时名称越短、销量越高越靠前
+        assertEquals(Arrays.asList(5L, 1L, 3L), ids.subList(2, 5));
+    }
+
+    @Test
+    void equalRelevanceOrdersById() {
+        List<ShopSearchIndex.Hit> hits = index.search("锅", null, 100);
+        for (int i = 1; i < hits.size(); i++) {
+            ShopSearchIndex.Hit prev = hits.get(i - 1);
+            ShopSearchIndex.Hit next = hits.get(i);
+            assertTrue(prev.getRelevance() > next.getRelevance()
+                    || (prev.getRelevance() == next.getRelevance() && prev.getId() < next.getId()));
+        }
+    }
+
+    @Test
+    void topKMatchesFullOrdering() {
+        List<Long> all = ids("锅");
+        for (int limit = 1; limit <= all.size(); limit++) {
+            List<Long> top = index.search("锅", null, limit).stream()
+                    .map(ShopSearchIndex.Hit::getId).collect(Collectors.toList());
+            assertEquals(all.subList(0, limit), top);
+        }
+    }
+
+    @Test
+    void cursorPagesWithoutGapsOrDuplicates() {
+        // 按(-相关度, id)游标翻页，与ShopServiceImpl.searchShopByName相同
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            List<ShopSearchIndex.Hit> page = index.search("锅", ScrollCursor.decodePosition(cursor), 2);
+            page.forEach(hit -> paged.add(hit.getId()));
+            ShopSearchIndex.Hit last = page.isEmpty() ? null : page.get(page.size() - 1);
+            cursor = page.size() < 2 ? null : ScrollCursor.encode(-last.getRelevance(), last.getId());
+        } while (cursor != null);
+        assertEquals(ids("锅"), paged);
+    }
+
+    @Test
+    void suggestOrdersPrefixMatchesBySold() {
+        assertEquals(Arrays.asList("火星锅盔", "火锅城", "火锅"), index.suggest("火", 3));
+        assertEquals(Arrays.asList("火星锅盔", "火锅城"), index.suggest("火", 2));
+        assertTrue(index.suggest("锅", 3).isEmpty());
+    }
+}